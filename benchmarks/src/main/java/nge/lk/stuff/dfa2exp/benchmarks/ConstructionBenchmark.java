@@ -0,0 +1,25 @@
+package nge.lk.stuff.dfa2exp.benchmarks;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the construction of division automata
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConstructionBenchmark {
+
+    @Benchmark
+    public DFA construct(DivisionParameters parameters) {
+        return DivisibilityAutomata.divisibleBy(parameters.base, parameters.div);
+    }
+}
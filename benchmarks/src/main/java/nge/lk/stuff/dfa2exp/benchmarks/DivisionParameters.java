@@ -0,0 +1,40 @@
+package nge.lk.stuff.dfa2exp.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The base and divisor of the division automaton under test
+ * <p>
+ * The defaults cover a few representative pairs. Any base in [2..36] and divisor in [2..200] can be measured by
+ * overriding the parameters on the command line, e.g. {@code -p base=2,8,10 -p div=2,3,50,200}. Expressions grow quickly
+ * with the divisor, so large divisors need a large heap.
+ */
+@State(Scope.Benchmark)
+public class DivisionParameters {
+
+    /**
+     * The alphabet of all supported bases
+     */
+    static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /**
+     * The base of the numbers
+     */
+    @Param({"2", "10", "16", "36"})
+    public int base;
+
+    /**
+     * The divisor
+     */
+    @Param({"3", "7", "10"})
+    public int div;
+
+    /**
+     * @return the alphabet of the base
+     */
+    String alphabet() {
+        return ALPHABET.substring(0, base);
+    }
+}
@@ -0,0 +1,40 @@
+package nge.lk.stuff.dfa2exp.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reports the length of the produced expression at the end of every trial
+ * <p>
+ * JMH sums auxiliary event counters over all iterations, so the length is printed to the benchmark log instead.
+ */
+@State(Scope.Thread)
+public class ExpressionLength {
+
+    /**
+     * The length of the last expression produced
+     */
+    private long length = -1;
+
+    /**
+     * Records a produced expression
+     *
+     * @param expression the expression
+     *
+     * @return the expression
+     */
+    String record(String expression) {
+        length = expression.length();
+        return expression;
+    }
+
+    /**
+     * Prints the length of the last expression
+     */
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.println("Expression length: " + length);
+    }
+}
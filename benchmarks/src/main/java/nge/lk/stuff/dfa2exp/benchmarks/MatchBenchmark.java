@@ -0,0 +1,89 @@
+package nge.lk.stuff.dfa2exp.benchmarks;
+
+import nge.lk.stuff.dfa2exp.compile.CompiledMatcher;
+import nge.lk.stuff.dfa2exp.compile.MatcherCompiler;
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DFAMatcher;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
+import nge.lk.stuff.dfa2exp.transform.EquationSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Compares matching numbers with the generated expression (java.util.regex), the automaton itself and the compiled
+ * automaton
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class MatchBenchmark {
+
+    /**
+     * The number of digits of the input
+     */
+    @Param({"16", "256"})
+    public int digits;
+
+    /**
+     * The input
+     */
+    private String input;
+
+    /**
+     * The compiled expression
+     */
+    private Pattern pattern;
+
+    /**
+     * The matcher of the automaton
+     */
+    private DFAMatcher matcher;
+
+    /**
+     * The compiled automaton
+     */
+    private CompiledMatcher compiled;
+
+    @Setup
+    public void setup(DivisionParameters parameters) {
+        DFA automaton = DivisibilityAutomata.divisibleBy(parameters.base, parameters.div);
+        pattern = Pattern.compile(new EquationSystem(automaton, parameters.alphabet(), true).solve());
+        matcher = new DFAMatcher(automaton, parameters.alphabet());
+        compiled = MatcherCompiler.compile(automaton, parameters.alphabet());
+
+        Random rng = new Random(0);
+        StringBuilder sb = new StringBuilder(digits);
+        for (int i = 0; i < digits; i++) {
+            sb.append(parameters.alphabet().charAt(rng.nextInt(parameters.base)));
+        }
+        input = sb.toString();
+    }
+
+    @Benchmark
+    public boolean regex() {
+        return pattern.matcher(input).matches();
+    }
+
+    @Benchmark
+    public boolean automaton() {
+        return matcher.matches(input);
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return compiled.matches(input);
+    }
+}
@@ -0,0 +1,46 @@
+package nge.lk.stuff.dfa2exp.benchmarks;
+
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
+import nge.lk.stuff.dfa2exp.transform.EquationSystem;
+import nge.lk.stuff.dfa2exp.transform.ExpressionOptimizer;
+import nge.lk.stuff.dfa2exp.transform.ExpressionTreeOptimizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the optimization of solved division expressions
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class OptimizeBenchmark {
+
+    /**
+     * The unoptimized expression
+     */
+    private String expression;
+
+    @Setup
+    public void setup(DivisionParameters parameters) {
+        expression = new EquationSystem(DivisibilityAutomata.divisibleBy(parameters.base, parameters.div), parameters.alphabet()).solve();
+    }
+
+    @Benchmark
+    public String optimize(ExpressionLength length) {
+        return length.record(new ExpressionOptimizer(expression).optimize());
+    }
+
+    @Benchmark
+    public String optimizeTree(ExpressionLength length) {
+        return length.record(new ExpressionTreeOptimizer(expression).optimize());
+    }
+}
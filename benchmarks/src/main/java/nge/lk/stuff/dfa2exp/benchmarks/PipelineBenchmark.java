@@ -0,0 +1,32 @@
+package nge.lk.stuff.dfa2exp.benchmarks;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
+import nge.lk.stuff.dfa2exp.transform.EquationSystem;
+import nge.lk.stuff.dfa2exp.transform.ExpressionTreeOptimizer;
+import nge.lk.stuff.dfa2exp.transform.SolveOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the whole pipeline of {@link nge.lk.stuff.dfa2exp.DivisionExpressionGenerator}: construction,
+ * minimization, solving and optimization
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PipelineBenchmark {
+
+    @Benchmark
+    public String pipeline(DivisionParameters parameters, ExpressionLength length) {
+        DFA automaton = DivisibilityAutomata.divisibleBy(parameters.base, parameters.div);
+        // The solved tree is optimized directly, like DivisionExpressionGenerator does
+        EquationSystem system = new EquationSystem(automaton, parameters.alphabet(), true);
+        return length.record(new ExpressionTreeOptimizer(system, new SolveOptions()).optimize());
+    }
+}
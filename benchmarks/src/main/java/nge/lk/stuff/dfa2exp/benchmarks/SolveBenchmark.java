@@ -0,0 +1,42 @@
+package nge.lk.stuff.dfa2exp.benchmarks;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
+import nge.lk.stuff.dfa2exp.transform.EquationSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures solving equation systems of division automata. Solving modifies the system, so every invocation creates a
+ * new one
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class SolveBenchmark {
+
+    /**
+     * The automaton
+     */
+    private DFA automaton;
+
+    @Setup
+    public void setup(DivisionParameters parameters) {
+        automaton = DivisibilityAutomata.divisibleBy(parameters.base, parameters.div);
+    }
+
+    @Benchmark
+    public String solve(DivisionParameters parameters, ExpressionLength length) {
+        EquationSystem system = new EquationSystem(automaton, parameters.alphabet());
+        return length.record(system.solve());
+    }
+}
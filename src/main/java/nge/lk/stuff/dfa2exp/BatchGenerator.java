@@ -0,0 +1,222 @@
+package nge.lk.stuff.dfa2exp;
+
+import nge.lk.stuff.dfa2exp.io.ExpressionStore;
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the expressions for many pairs of base and divisor in a single run
+ * <p>
+ * Every input line contains a base and a divisor, each either a number or an inclusive range like {@code 1..500}. They
+ * can be named ({@code base=2..36 div=1..500}), otherwise the base comes first. Empty lines and lines starting with #
+ * are ignored. For every pair a line {@code base divisor expression} is written, in the order of the input even if the
+ * pairs are processed in parallel. Malformed lines are reported and skipped.
+ */
+public final class BatchGenerator {
+
+    /**
+     * The number of threads which generate expressions
+     */
+    private final int threads;
+
+    /**
+     * The store which holds previously generated expressions, or null
+     */
+    private final ExpressionStore store;
+
+    /**
+     * Creates a batch generator
+     *
+     * @param threads the number of threads which generate expressions. 1 generates them on the calling thread
+     * @param store the store which holds previously generated expressions, or null
+     */
+    public BatchGenerator(int threads, ExpressionStore store) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.threads = threads;
+        this.store = store;
+    }
+
+    /**
+     * Generates the expressions for all pairs of the input
+     *
+     * @param input the pairs
+     * @param output receives one line per pair
+     * @param errors receives one line per malformed input line or failed pair
+     *
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public void run(Reader input, Writer output, PrintWriter errors) throws IOException {
+        BufferedReader reader = new BufferedReader(input);
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        // Results which have not been written yet. The window is bounded so that large results do not pile up
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int[] ranges;
+                try {
+                    ranges = parse(line);
+                } catch (IllegalArgumentException e) {
+                    errors.println("Line " + lineNumber + ": " + e.getMessage());
+                    continue;
+                }
+                if (ranges == null) {
+                    continue;
+                }
+
+                for (int base = ranges[0]; base <= ranges[1]; base++) {
+                    for (int div = ranges[2]; div <= ranges[3] && div > 0; div++) {
+                        if (executor == null) {
+                            String result = generate(base, div, errors);
+                            if (result != null) {
+                                output.write(result);
+                            }
+                            continue;
+                        }
+
+                        int b = base;
+                        int d = div;
+                        pending.add(executor.submit(() -> generate(b, d, errors)));
+                        if (pending.size() >= 4 * threads) {
+                            writeNext(pending, output, errors);
+                        }
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeNext(pending, output, errors);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        output.flush();
+        errors.flush();
+    }
+
+    /**
+     * Waits for the oldest pending result and writes it
+     *
+     * @param pending the pending results
+     * @param output the output
+     * @param errors the output for failures
+     *
+     * @throws IOException if writing the output fails
+     */
+    private static void writeNext(Deque<Future<String>> pending, Writer output, PrintWriter errors) throws IOException {
+        try {
+            String result = pending.remove().get();
+            if (result != null) {
+                output.write(result);
+            }
+        } catch (ExecutionException e) {
+            errors.println(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    /**
+     * Generates the output line for a pair
+     *
+     * @param base the base
+     * @param div the divisor
+     * @param errors receives the reason if the pair fails
+     *
+     * @return the line, including the line break, or null if the pair failed
+     */
+    private String generate(int base, int div, PrintWriter errors) {
+        try {
+            DFA dfa = DivisibilityAutomata.divisibleBy(base, div);
+            String expression = null;
+            if (store != null) {
+                expression = store.get(dfa, DivisionExpressionGenerator.ALPHABET);
+            }
+            if (expression == null) {
+                expression = DivisionExpressionGenerator.convert(dfa);
+                if (store != null) {
+                    store.put(dfa, DivisionExpressionGenerator.ALPHABET, expression);
+                }
+            }
+            return base + " " + div + " " + expression + System.lineSeparator();
+        } catch (IOException | RuntimeException e) {
+            errors.println(base + " " + div + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses an input line
+     *
+     * @param line the line
+     *
+     * @return the first and last base and the first and last divisor, or null if the line is empty or a comment
+     *
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    private static int[] parse(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        String[] tokens = trimmed.split("\\s+");
+        if (tokens.length != 2) {
+            throw new IllegalArgumentException("Expected a base and a divisor: " + line);
+        }
+
+        int[] ranges = new int[4];
+        boolean[] assigned = new boolean[2];
+        for (int i = 0; i < 2; i++) {
+            String token = tokens[i];
+            int target = i;
+            if (token.startsWith("base=")) {
+                target = 0;
+                token = token.substring(5);
+            } else if (token.startsWith("div=")) {
+                target = 1;
+                token = token.substring(4);
+            }
+            if (assigned[target]) {
+                throw new IllegalArgumentException("Expected a base and a divisor: " + line);
+            }
+            assigned[target] = true;
+
+            int separator = token.indexOf("..");
+            try {
+                ranges[2 * target] = Integer.parseInt(separator == -1 ? token : token.substring(0, separator));
+                ranges[2 * target + 1] = separator == -1 ? ranges[2 * target] : Integer.parseInt(token.substring(separator + 2));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number or range: " + tokens[i]);
+            }
+            if (ranges[2 * target] > ranges[2 * target + 1]) {
+                throw new IllegalArgumentException("Empty range: " + tokens[i]);
+            }
+        }
+
+        if (ranges[0] < Character.MIN_RADIX || ranges[1] > Character.MAX_RADIX) {
+            throw new IllegalArgumentException(String.format("Allowed values are [%d..%d] for base", Character.MIN_RADIX, Character.MAX_RADIX));
+        }
+        if (ranges[2] < 1) {
+            throw new IllegalArgumentException("Allowed values are [1..] for div");
+        }
+        return ranges;
+    }
+}
@@ -1,15 +1,53 @@
 package nge.lk.stuff.dfa2exp;
 
+import nge.lk.stuff.dfa2exp.io.ExpressionStore;
 import nge.lk.stuff.dfa2exp.model.DFA;
-import nge.lk.stuff.dfa2exp.model.State;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
 import nge.lk.stuff.dfa2exp.transform.EquationSystem;
-import nge.lk.stuff.dfa2exp.transform.ExpressionOptimizer;
+import nge.lk.stuff.dfa2exp.transform.ExpressionCache;
+import nge.lk.stuff.dfa2exp.transform.ExpressionTreeOptimizer;
+import nge.lk.stuff.dfa2exp.transform.SolveOptions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 public final class DivisionExpressionGenerator {
 
+    static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private static final String USAGE = "Usage: java -jar nameOfJar.jar base divisor [store directory]\n"
+            + "       java -jar nameOfJar.jar --batch [file] [--threads n] [--store directory]\n"
+            + "       java -jar nameOfJar.jar --server [--port n] [--threads n] [--max-length n] [--timeout seconds]\n"
+            + "Batch input lines contain a base and a divisor, each a number or a range like 1..500";
+
+    private static final long SERVER_CACHE_WEIGHT = 1L << 26;
+
+    private static final long DEFAULT_SERVER_MAX_LENGTH = 1L << 20;
+
+    private static final long DEFAULT_SERVER_TIMEOUT = 10;
+
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.err.println("Usage: java -jar nameOfJar.jar base divisor");
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            batch(args);
+            return;
+        }
+        if (args.length > 0 && "--server".equals(args[0])) {
+            server(args);
+            return;
+        }
+        if (args.length != 2 && args.length != 3) {
+            System.err.println(USAGE);
             return;
         }
 
@@ -23,36 +61,131 @@ public final class DivisionExpressionGenerator {
             return;
         }
 
-        if (base < Character.MIN_RADIX || base > Character.MAX_RADIX || div < 1) {
-            System.err.println(String.format("Invalid base or invalid divisor. Allowed values are [%d..%d] for base, [1..] for div", Character.MIN_RADIX, Character.MAX_RADIX));
+        if (base < Character.MIN_RADIX || base > Character.MAX_RADIX || div < 1 || div > Integer.MAX_VALUE / base) {
+            // The automaton has a transition table of div * base entries
+            int maxDiv = Integer.MAX_VALUE / Math.max(Character.MIN_RADIX, Math.min(base, Character.MAX_RADIX));
+            System.err.println(String.format("Invalid base or invalid divisor. Allowed values are [%d..%d] for base, [1..%d] for div", Character.MIN_RADIX, Character.MAX_RADIX, maxDiv));
             return;
         }
 
-        DFA d = new DFA(div, base);
-        d.makeFinal(0);
-        for (int i = 0; i < div * base; i++) {
-            String str = Integer.toString(i, base).toUpperCase();
-            char[] data = str.toCharArray();
+        DFA d = DivisibilityAutomata.divisibleBy(base, div);
+        if (args.length == 2) {
+            // Large expressions are written while they are rendered
+            try {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                new ExpressionTreeOptimizer(new EquationSystem(d, ALPHABET, true), new SolveOptions()).optimize(out);
+                out.write(System.lineSeparator());
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Can not write the expression: " + e.getMessage());
+            }
+            return;
+        }
 
-            State cursor = d.createRun();
-            for (int j = 0; j < data.length; j++) {
-                int symbol = getHighBaseSymbolIndex(data[j]);
-                if (j == data.length - 1 && !cursor.hasTransition(symbol)) {
-                    cursor.createTransition(symbol, d.getState(i % div));
-                } else {
-                    cursor = cursor.takeTransition(symbol);
+        // Previous results are looked up in the store
+        try (ExpressionStore store = new ExpressionStore(Paths.get(args[2]))) {
+            String expr = store.get(d, ALPHABET);
+            if (expr == null) {
+                expr = convert(d);
+                store.put(d, ALPHABET, expr);
+            }
+            System.out.println(expr);
+        } catch (IOException e) {
+            System.err.println("Can not use the store: " + e.getMessage());
+        }
+    }
+
+    static String convert(DFA d) {
+        return convert(d, ALPHABET, new SolveOptions());
+    }
+
+    static String convert(DFA d, CharSequence alphabet, SolveOptions options) {
+        return new ExpressionTreeOptimizer(new EquationSystem(d, alphabet, true), options).optimize();
+    }
+
+    private static void batch(String[] args) {
+        String file = null;
+        String storeDirectory = null;
+        int threads = 1;
+        for (int i = 1; i < args.length; i++) {
+            if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException ignored) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Please input a positive number of threads");
+                    return;
                 }
+            } else if ("--store".equals(args[i]) && i + 1 < args.length) {
+                storeDirectory = args[++i];
+            } else if (file == null && !args[i].startsWith("--")) {
+                file = args[i];
+            } else {
+                System.err.println(USAGE);
+                return;
             }
         }
 
-        EquationSystem equSys = new EquationSystem(d, "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ");
-        String expr = equSys.solve();
-        ExpressionOptimizer optimizer = new ExpressionOptimizer(expr);
-        System.out.println(optimizer.optimize());
+        PrintWriter errors = new PrintWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try (Reader in = file == null || "-".equals(file)
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+             ExpressionStore store = storeDirectory == null ? null : new ExpressionStore(Paths.get(storeDirectory))) {
+            new BatchGenerator(threads, store).run(in, out, errors);
+        } catch (IOException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+        }
     }
 
-    private static int getHighBaseSymbolIndex(char c) {
-        return c <= '9' ? c - '0' : c - 'A' + 10;
+    private static void server(String[] args) {
+        int port = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxLength = DEFAULT_SERVER_MAX_LENGTH;
+        long timeout = DEFAULT_SERVER_TIMEOUT;
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (("--port".equals(option) || "--threads".equals(option) || "--max-length".equals(option)
+                    || "--timeout".equals(option)) && i + 1 < args.length) {
+                long value;
+                try {
+                    value = Long.parseLong(args[++i]);
+                } catch (NumberFormatException ignored) {
+                    value = -1;
+                }
+                if ("--port".equals(option) && value >= 0 && value <= 0xFFFF) {
+                    port = (int) value;
+                } else if ("--threads".equals(option) && value > 0 && value <= Integer.MAX_VALUE) {
+                    threads = (int) value;
+                } else if ("--max-length".equals(option) && value > 0) {
+                    maxLength = value;
+                } else if ("--timeout".equals(option) && value > 0) {
+                    timeout = value;
+                } else {
+                    System.err.println("Please input a valid " + option.substring(2));
+                    return;
+                }
+            } else {
+                System.err.println(USAGE);
+                return;
+            }
+        }
+
+        // Every request is limited, so a single client can not occupy the workers or the memory indefinitely
+        SolveOptions options = new SolveOptions();
+        options.setMaxExpressionLength(maxLength);
+        options.setTimeLimit(timeout, TimeUnit.SECONDS);
+
+        // Only local clients can connect. The server keeps running until the process is stopped
+        try {
+            ExpressionServer server = new ExpressionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                    threads, new ExpressionCache(SERVER_CACHE_WEIGHT), options);
+            System.out.println("Listening on port " + server.getPort());
+        } catch (IOException e) {
+            System.err.println("Can not start the server: " + e.getMessage());
+        }
     }
 
     private DivisionExpressionGenerator() {
@@ -0,0 +1,349 @@
+package nge.lk.stuff.dfa2exp;
+
+import nge.lk.stuff.dfa2exp.io.JsonFormat;
+import nge.lk.stuff.dfa2exp.io.LabeledDFA;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
+import nge.lk.stuff.dfa2exp.transform.ExpressionCache;
+import nge.lk.stuff.dfa2exp.transform.SolveOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A server which converts automata to regular expressions for several clients, keeping the converter warm
+ * <p>
+ * The protocol is line based (UTF-8, lines end with \n). Every request line is answered by exactly one response line,
+ * {@code OK <expression>} or {@code ERROR <message>}, in the order of the requests. Clients can send further requests
+ * before the responses arrive; they are processed in parallel. The requests are:
+ * <ul>
+ * <li>{@code DIV <base> <divisor>}: the expression for the numbers in the given base which are divisible by the
+ * divisor, like {@link DivisionExpressionGenerator}</li>
+ * <li>{@code JSON <automaton>}: the expression for an automaton in the format of {@link JsonFormat}, on a single
+ * line</li>
+ * <li>{@code PING}: answered with {@code OK}</li>
+ * </ul>
+ * Results are kept in an {@link ExpressionCache}. Every connection is served by its own thread which reads the requests
+ * from the channel, the conversions run on a shared pool.
+ */
+public final class ExpressionServer implements Closeable {
+
+    /**
+     * The maximum number of requests of a connection which are processed or waiting for their response. Reading further
+     * requests blocks until responses are written
+     */
+    private static final int MAX_PENDING_REQUESTS = 64;
+
+    /**
+     * The maximum length of a request line in bytes
+     */
+    private static final int MAX_REQUEST_LENGTH = 1 << 24;
+
+    /**
+     * The channel which accepts connections
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     * The threads which accept connections and read requests
+     */
+    private final ExecutorService connectionThreads = Executors.newCachedThreadPool();
+
+    /**
+     * The threads which convert automata
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The open connections
+     */
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The cache for the results
+     */
+    private final ExpressionCache cache;
+
+    /**
+     * The limits for solving
+     */
+    private final SolveOptions options;
+
+    /**
+     * Starts a server
+     *
+     * @param address the address to listen on, usually a loopback address
+     * @param threads the number of threads which convert automata
+     * @param cache the cache for the results
+     * @param options the limits for solving. Requests which exceed them are answered with an error
+     *
+     * @throws IOException if the address can not be bound
+     */
+    public ExpressionServer(InetSocketAddress address, int threads, ExpressionCache cache, SolveOptions options) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        this.cache = cache;
+        this.options = options;
+        workers = Executors.newFixedThreadPool(threads);
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address);
+        } catch (IOException e) {
+            server.close();
+            workers.shutdown();
+            throw e;
+        }
+        connectionThreads.execute(this::acceptConnections);
+    }
+
+    /**
+     * @return the port the server listens on
+     *
+     * @throws IOException if the server is closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Stops accepting connections, closes all connections and stops all threads
+     *
+     * @throws IOException if the server channel can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (SocketChannel connection : connections) {
+            closeQuietly(connection);
+        }
+        connectionThreads.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Accepts connections until the server is closed
+     */
+    private void acceptConnections() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel connection = server.accept();
+                connections.add(connection);
+                connectionThreads.execute(() -> serve(connection));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // The client is gone before its connection was accepted
+            } catch (RuntimeException e) {
+                // The thread pools are shut down, close() has been called
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the requests of a connection until the client closes it, then waits for the remaining responses
+     *
+     * @param connection the connection
+     */
+    private void serve(SocketChannel connection) {
+        Semaphore pending = new Semaphore(MAX_PENDING_REQUESTS);
+        // Responses are written in request order by chaining each response after the previous one
+        CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+        try {
+            LineReader reader = new LineReader(connection);
+            String request;
+            while ((request = reader.readLine()) != null) {
+                pending.acquire();
+                String line = request;
+                // Errors like a StackOverflowError escape respond(), they are answered like any other failure
+                CompletableFuture<String> response = CompletableFuture.supplyAsync(() -> respond(line), workers)
+                        .handle((text, failure) -> failure == null ? text : error(failure));
+                // The permit is released even if the chain fails, otherwise the reader would block forever
+                previous = previous.thenCombine(response, (ignored, text) -> text).handle((text, failure) -> {
+                    try {
+                        if (failure == null) {
+                            write(connection, text);
+                        } else {
+                            closeQuietly(connection);
+                        }
+                    } catch (IOException e) {
+                        closeQuietly(connection);
+                    } finally {
+                        pending.release();
+                    }
+                    return null;
+                });
+            }
+            previous.join();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // The connection was closed or the server is shutting down
+        } finally {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Processes a request
+     *
+     * @param request the request line
+     *
+     * @return the response line
+     */
+    private String respond(String request) {
+        try {
+            int separator = request.indexOf(' ');
+            String command = separator == -1 ? request : request.substring(0, separator);
+            String argument = separator == -1 ? "" : request.substring(separator + 1);
+            switch (command) {
+                case "PING":
+                    return "OK";
+                case "DIV":
+                    String[] numbers = argument.trim().split("\\s+");
+                    if (numbers.length != 2) {
+                        return "ERROR Expected a base and a divisor";
+                    }
+                    int base = Integer.parseInt(numbers[0]);
+                    int div = Integer.parseInt(numbers[1]);
+                    if (base < Character.MIN_RADIX || base > Character.MAX_RADIX) {
+                        return "ERROR Allowed values are [" + Character.MIN_RADIX + ".." + Character.MAX_RADIX + "] for base";
+                    }
+                    return "OK " + cache.get(DivisibilityAutomata.divisibleBy(base, div), DivisionExpressionGenerator.ALPHABET,
+                            (dfa, alphabet) -> DivisionExpressionGenerator.convert(dfa, alphabet, options));
+                case "JSON":
+                    LabeledDFA automaton = JsonFormat.read(new StringReader(argument));
+                    return "OK " + cache.get(automaton.getDFA(), automaton.getAlphabet(),
+                            (dfa, alphabet) -> DivisionExpressionGenerator.convert(dfa, alphabet, options));
+                default:
+                    return "ERROR Unknown command: " + command;
+            }
+        } catch (IOException | RuntimeException e) {
+            return error(e);
+        }
+    }
+
+    /**
+     * Creates the error response for a failed request
+     *
+     * @param failure the cause of the failure
+     *
+     * @return the response line
+     */
+    private static String error(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        String message = cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage();
+        // Line breaks would end the response early
+        return "ERROR " + message.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Writes a response line
+     *
+     * @param connection the connection
+     * @param response the response without line break
+     *
+     * @throws IOException if writing fails
+     */
+    private static void write(SocketChannel connection, String response) throws IOException {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(response + "\n");
+        while (buffer.hasRemaining()) {
+            connection.write(buffer);
+        }
+    }
+
+    /**
+     * Closes a connection, ignoring errors
+     *
+     * @param connection the connection
+     */
+    private static void closeQuietly(SocketChannel connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // Nothing left to do
+        }
+    }
+
+    /**
+     * Reads UTF-8 lines directly from a channel. The channel streams of {@link java.nio.channels.Channels} can not be
+     * used, because they block writes to the channel while a read is waiting for input
+     */
+    private static final class LineReader {
+
+        /**
+         * The channel
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The bytes which were read but not consumed yet
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        /**
+         * The bytes of the current line
+         */
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        /**
+         * Creates a line reader
+         *
+         * @param channel the channel
+         */
+        private LineReader(SocketChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /**
+         * Reads the next line
+         *
+         * @return the line without its line break, or null at the end of the input
+         *
+         * @throws IOException if reading fails or the line is too long
+         */
+        private String readLine() throws IOException {
+            line.reset();
+            while (true) {
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        int length = line.size();
+                        byte[] bytes = line.toByteArray();
+                        if (length > 0 && bytes[length - 1] == '\r') {
+                            length--;
+                        }
+                        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+                    }
+                    if (line.size() == MAX_REQUEST_LENGTH) {
+                        throw new IOException("Request too long");
+                    }
+                    line.write(b);
+                }
+
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    // A last line without line break is a request as well
+                    return line.size() == 0 ? null : new String(line.toByteArray(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+    }
+}
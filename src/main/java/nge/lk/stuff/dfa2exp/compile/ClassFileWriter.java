@@ -0,0 +1,278 @@
+package nge.lk.stuff.dfa2exp.compile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes minimal class files: a constant pool, methods with code and no fields or other attributes
+ * <p>
+ * The class file version is 49 (Java 5), the newest version that does not require stack map frames, so the generated
+ * code is verified by type inference.
+ */
+final class ClassFileWriter {
+
+    /**
+     * The major class file version
+     */
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * The constant pool entries
+     */
+    private final CodeBuffer constantPool = new CodeBuffer();
+
+    /**
+     * The indices of the constant pool entries, keyed by their type and contents
+     */
+    private final Map<String, Integer> constants = new HashMap<>();
+
+    /**
+     * The methods
+     */
+    private final CodeBuffer methods = new CodeBuffer();
+
+    /**
+     * The access flags of the class
+     */
+    private final int access;
+
+    /**
+     * The constant pool index of this class
+     */
+    private final int thisClass;
+
+    /**
+     * The constant pool index of the super class
+     */
+    private final int superClass;
+
+    /**
+     * The constant pool indices of the implemented interfaces
+     */
+    private final int[] interfaces;
+
+    /**
+     * The number of constant pool slots in use, including the unused slot 0
+     */
+    private int constantCount = 1;
+
+    /**
+     * The number of methods
+     */
+    private int methodCount;
+
+    /**
+     * Starts a class file
+     *
+     * @param access the access flags of the class
+     * @param name the internal name of the class
+     * @param superName the internal name of the super class
+     * @param interfaceNames the internal names of the implemented interfaces
+     */
+    ClassFileWriter(int access, String name, String superName, String... interfaceNames) {
+        this.access = access;
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    /**
+     * Returns the constant pool index of a UTF-8 constant, creating it if necessary
+     *
+     * @param value the value
+     *
+     * @return the index
+     */
+    int utf8(String value) {
+        Integer index = constants.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        constantPool.put1(CONSTANT_UTF8);
+        constantPool.put2(bytes.length);
+        for (byte b : bytes) {
+            constantPool.put1(b);
+        }
+        return register("U" + value);
+    }
+
+    /**
+     * Returns the constant pool index of a class constant, creating it if necessary
+     *
+     * @param name the internal name of the class
+     *
+     * @return the index
+     */
+    int classRef(String name) {
+        Integer index = constants.get("C" + name);
+        if (index != null) {
+            return index;
+        }
+
+        int nameIndex = utf8(name);
+        constantPool.put1(CONSTANT_CLASS);
+        constantPool.put2(nameIndex);
+        return register("C" + name);
+    }
+
+    /**
+     * Returns the constant pool index of a method reference, creating it if necessary
+     *
+     * @param owner the internal name of the class declaring the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     *
+     * @return the index
+     */
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    /**
+     * Returns the constant pool index of an interface method reference, creating it if necessary
+     *
+     * @param owner the internal name of the interface declaring the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     *
+     * @return the index
+     */
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    /**
+     * Adds a method
+     *
+     * @param methodAccess the access flags of the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @param maxStack the maximum depth of the operand stack
+     * @param maxLocals the number of local variable slots, including the parameters
+     * @param code the bytecode of the method
+     */
+    void addMethod(int methodAccess, String name, String descriptor, int maxStack, int maxLocals, CodeBuffer code) {
+        if (code.size() > 65535) {
+            throw new IllegalArgumentException("Method " + name + " is too large: " + code.size() + " bytes");
+        }
+
+        methods.put2(methodAccess);
+        methods.put2(utf8(name));
+        methods.put2(utf8(descriptor));
+        methods.put2(1);
+
+        // Code attribute without exception table and attributes
+        methods.put2(utf8("Code"));
+        methods.put4(12 + code.size());
+        methods.put2(maxStack);
+        methods.put2(maxLocals);
+        methods.put4(code.size());
+        methods.put(code);
+        methods.put2(0);
+        methods.put2(0);
+        methodCount++;
+    }
+
+    /**
+     * Creates the class file
+     *
+     * @return the contents of the class file
+     */
+    byte[] toByteArray() {
+        CodeBuffer out = new CodeBuffer();
+        out.put4(0xCAFEBABE);
+        out.put2(0);
+        out.put2(VERSION);
+        out.put2(constantCount);
+        out.put(constantPool);
+        out.put2(access);
+        out.put2(thisClass);
+        out.put2(superClass);
+        out.put2(interfaces.length);
+        for (int index : interfaces) {
+            out.put2(index);
+        }
+        out.put2(0);
+        out.put2(methodCount);
+        out.put(methods);
+        out.put2(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the constant pool index of a member reference, creating it if necessary
+     *
+     * @param tag the tag of the constant
+     * @param owner the internal name of the declaring type
+     * @param name the name of the member
+     * @param descriptor the descriptor of the member
+     *
+     * @return the index
+     */
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + '.' + name + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        int classIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        constantPool.put1(tag);
+        constantPool.put2(classIndex);
+        constantPool.put2(nameAndType);
+        return register(key);
+    }
+
+    /**
+     * Returns the constant pool index of a name and type constant, creating it if necessary
+     *
+     * @param name the name
+     * @param descriptor the descriptor
+     *
+     * @return the index
+     */
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ':' + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        constantPool.put1(CONSTANT_NAME_AND_TYPE);
+        constantPool.put2(nameIndex);
+        constantPool.put2(descriptorIndex);
+        return register(key);
+    }
+
+    /**
+     * Registers the most recently written constant
+     *
+     * @param key the key of the constant
+     *
+     * @return the index of the constant
+     */
+    private int register(String key) {
+        if (constantCount == 65535) {
+            throw new IllegalArgumentException("Constant pool overflow");
+        }
+
+        int index = constantCount++;
+        constants.put(key, index);
+        return index;
+    }
+}
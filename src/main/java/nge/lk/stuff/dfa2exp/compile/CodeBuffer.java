@@ -0,0 +1,113 @@
+package nge.lk.stuff.dfa2exp.compile;
+
+import java.util.Arrays;
+
+/**
+ * A growable big-endian byte buffer for class file contents
+ */
+final class CodeBuffer {
+
+    /**
+     * The contents
+     */
+    private byte[] data = new byte[256];
+
+    /**
+     * The number of bytes written
+     */
+    private int size;
+
+    /**
+     * Appends a byte
+     *
+     * @param value the byte
+     */
+    void put1(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Appends two bytes
+     *
+     * @param value the value, only the lower 16 bits are written
+     */
+    void put2(int value) {
+        ensureCapacity(2);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Appends four bytes
+     *
+     * @param value the value
+     */
+    void put4(int value) {
+        ensureCapacity(4);
+        data[size++] = (byte) (value >>> 24);
+        data[size++] = (byte) (value >>> 16);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Appends the contents of another buffer
+     *
+     * @param other the other buffer
+     */
+    void put(CodeBuffer other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Overwrites four previously written bytes
+     *
+     * @param position the position of the first byte
+     * @param value the value
+     */
+    void set4(int position, int value) {
+        data[position] = (byte) (value >>> 24);
+        data[position + 1] = (byte) (value >>> 16);
+        data[position + 2] = (byte) (value >>> 8);
+        data[position + 3] = (byte) value;
+    }
+
+    /**
+     * Reads four previously written bytes
+     *
+     * @param position the position of the first byte
+     *
+     * @return the value
+     */
+    int get4(int position) {
+        return (data[position] & 0xFF) << 24 | (data[position + 1] & 0xFF) << 16 | (data[position + 2] & 0xFF) << 8 | data[position + 3] & 0xFF;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the written bytes
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Makes room for more bytes
+     *
+     * @param extra the number of bytes that will be written
+     */
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package nge.lk.stuff.dfa2exp.compile;
+
+/**
+ * A matcher whose automaton was compiled to bytecode by {@link MatcherCompiler}
+ */
+public interface CompiledMatcher {
+
+    /**
+     * Checks whether the automaton accepts the given input
+     *
+     * @param input the input
+     *
+     * @return true if the input is accepted
+     */
+    boolean matches(CharSequence input);
+}
@@ -0,0 +1,304 @@
+package nge.lk.stuff.dfa2exp.compile;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles deterministic finite automata to JVM classes
+ * <p>
+ * Every state becomes a block of code which returns if the input is exhausted and otherwise switches over the next
+ * character to jump to the block of the successor state. The JIT compiles this to native jump tables, which is faster
+ * than table driven matching for small and medium automata. The size of a method is limited to 64 KiB of bytecode, so
+ * large automata can not be compiled; use a {@link nge.lk.stuff.dfa2exp.model.DFAMatcher} for those.
+ * <p>
+ * Every compiled class is defined by its own class loader, so it can be unloaded once the matcher is unreachable.
+ */
+public final class MatcherCompiler {
+
+    /**
+     * The internal name of {@link CompiledMatcher}
+     */
+    private static final String MATCHER = "nge/lk/stuff/dfa2exp/compile/CompiledMatcher";
+
+    /**
+     * The internal name of {@link CharSequence}
+     */
+    private static final String CHAR_SEQUENCE = "java/lang/CharSequence";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_2 = 0x1c;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ISTORE = 0x36;
+    private static final int ISTORE_2 = 0x3d;
+    private static final int ISTORE_3 = 0x3e;
+    private static final int IINC = 0x84;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    /**
+     * The local variable slots of the generated matches method: 1 is the input, 2 its length, 3 the current index and 4
+     * the current character
+     */
+    private static final int LOCAL_INDEX = 3;
+    private static final int LOCAL_CHAR = 4;
+
+    /**
+     * Used to create unique class names
+     */
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    /**
+     * Compiles the given automaton
+     *
+     * @param dfa the automaton
+     * @param alphabet the alphabet of the automaton. The character at index i is the symbol with index i
+     *
+     * @return the compiled matcher
+     */
+    public static CompiledMatcher compile(DFA dfa, CharSequence alphabet) {
+        String className = MatcherCompiler.class.getPackage().getName() + ".GeneratedMatcher$" + classCounter.getAndIncrement();
+        byte[] classFile = generate(className.replace('.', '/'), dfa, alphabet);
+
+        MatcherLoader loader = new MatcherLoader(MatcherCompiler.class.getClassLoader());
+        try {
+            return (CompiledMatcher) loader.define(className, classFile).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to instantiate the compiled matcher", e);
+        }
+    }
+
+    /**
+     * Generates the class file of a matcher
+     *
+     * @param internalName the internal name of the generated class
+     * @param dfa the automaton
+     * @param alphabet the alphabet of the automaton
+     *
+     * @return the class file
+     */
+    static byte[] generate(String internalName, DFA dfa, CharSequence alphabet) {
+        if (alphabet.length() != dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+        if (dfa.stateCount() == 0) {
+            throw new IllegalArgumentException("The automaton has no initial state");
+        }
+
+        // The symbols, sorted by their character
+        long[] sorted = new long[alphabet.length()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = (long) alphabet.charAt(i) << 32 | i;
+        }
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] >>> 32 == sorted[i - 1] >>> 32) {
+                throw new IllegalArgumentException("Duplicate symbol in alphabet: " + (char) (sorted[i] >>> 32));
+            }
+        }
+
+        ClassFileWriter writer = new ClassFileWriter(ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName, "java/lang/Object", MATCHER);
+
+        CodeBuffer constructor = new CodeBuffer();
+        constructor.put1(ALOAD_0);
+        constructor.put1(INVOKESPECIAL);
+        constructor.put2(writer.methodRef("java/lang/Object", "<init>", "()V"));
+        constructor.put1(RETURN);
+        writer.addMethod(ACC_PUBLIC, "<init>", "()V", 1, 1, constructor);
+
+        writer.addMethod(ACC_PUBLIC, "matches", "(L" + CHAR_SEQUENCE + ";)Z", 2, 5, generateMatches(writer, dfa, sorted));
+        return writer.toByteArray();
+    }
+
+    /**
+     * Generates the code of the matches method
+     *
+     * @param writer the class file writer
+     * @param dfa the automaton
+     * @param sorted the symbols sorted by their character, encoded as {@code character << 32 | symbol}
+     *
+     * @return the code
+     */
+    private static CodeBuffer generateMatches(ClassFileWriter writer, DFA dfa, long[] sorted) {
+        int lengthMethod = writer.interfaceMethodRef(CHAR_SEQUENCE, "length", "()I");
+        int charAtMethod = writer.interfaceMethodRef(CHAR_SEQUENCE, "charAt", "(I)C");
+
+        CodeBuffer code = new CodeBuffer();
+        code.put1(ALOAD_1);
+        code.put1(INVOKEINTERFACE);
+        code.put2(lengthMethod);
+        code.put1(1);
+        code.put1(0);
+        code.put1(ISTORE_2);
+        code.put1(ICONST_0);
+        code.put1(ISTORE_3);
+
+        // Switch offsets are written as target states (-1 for the rejecting block) and patched once the positions of
+        // all state blocks are known. Every jump is recorded as (position of the offset, position of the switch)
+        int n = dfa.stateCount();
+        int[] statePosition = new int[n];
+        CodeBuffer jumps = new CodeBuffer();
+
+        int[] keys = new int[sorted.length];
+        int[] targets = new int[sorted.length];
+        for (int q = 0; q < n; q++) {
+            statePosition[q] = code.size();
+
+            // if (i >= length) return isFinal(q);
+            code.put1(ILOAD_3);
+            code.put1(ILOAD_2);
+            code.put1(IF_ICMPLT);
+            code.put2(5);
+            code.put1(dfa.isFinal(q) ? ICONST_1 : ICONST_0);
+            code.put1(IRETURN);
+
+            // c = input.charAt(i++);
+            code.put1(ALOAD_1);
+            code.put1(ILOAD_3);
+            code.put1(INVOKEINTERFACE);
+            code.put2(charAtMethod);
+            code.put1(2);
+            code.put1(0);
+            code.put1(ISTORE);
+            code.put1(LOCAL_CHAR);
+            code.put1(IINC);
+            code.put1(LOCAL_INDEX);
+            code.put1(1);
+            code.put1(ILOAD);
+            code.put1(LOCAL_CHAR);
+
+            int cases = 0;
+            for (long symbol : sorted) {
+                int target = dfa.getTransition(q, (int) symbol);
+                if (target != -1) {
+                    keys[cases] = (int) (symbol >>> 32);
+                    targets[cases] = target;
+                    cases++;
+                }
+            }
+
+            int switchPosition = code.size();
+            if (useTableSwitch(keys, cases)) {
+                int low = keys[0];
+                int high = keys[cases - 1];
+                code.put1(TABLESWITCH);
+                align(code);
+                putJump(code, jumps, switchPosition, -1);
+                code.put4(low);
+                code.put4(high);
+                for (int key = low, i = 0; key <= high; key++) {
+                    putJump(code, jumps, switchPosition, keys[i] == key ? targets[i++] : -1);
+                }
+            } else {
+                code.put1(LOOKUPSWITCH);
+                align(code);
+                putJump(code, jumps, switchPosition, -1);
+                code.put4(cases);
+                for (int i = 0; i < cases; i++) {
+                    code.put4(keys[i]);
+                    putJump(code, jumps, switchPosition, targets[i]);
+                }
+            }
+        }
+
+        int rejectPosition = code.size();
+        code.put1(ICONST_0);
+        code.put1(IRETURN);
+
+        for (int i = 0; i < jumps.size(); i += 8) {
+            int offsetPosition = jumps.get4(i);
+            int switchPosition = jumps.get4(i + 4);
+            int target = code.get4(offsetPosition);
+            code.set4(offsetPosition, (target == -1 ? rejectPosition : statePosition[target]) - switchPosition);
+        }
+        return code;
+    }
+
+    /**
+     * Decides between a tableswitch and a lookupswitch, using the same cost estimate as javac
+     *
+     * @param keys the sorted keys
+     * @param cases the number of keys
+     *
+     * @return true if a tableswitch should be used
+     */
+    private static boolean useTableSwitch(int[] keys, int cases) {
+        if (cases == 0) {
+            return false;
+        }
+        long tableSpace = 4 + ((long) keys[cases - 1] - keys[0] + 1);
+        long tableTime = 3;
+        long lookupSpace = 3 + 2 * (long) cases;
+        long lookupTime = cases;
+        return tableSpace + 3 * tableTime <= lookupSpace + 3 * lookupTime;
+    }
+
+    /**
+     * Writes a switch offset which is patched later
+     *
+     * @param code the code
+     * @param jumps the recorded jumps
+     * @param switchPosition the position of the switch instruction
+     * @param target the target state, or -1 for the rejecting block
+     */
+    private static void putJump(CodeBuffer code, CodeBuffer jumps, int switchPosition, int target) {
+        jumps.put4(code.size());
+        jumps.put4(switchPosition);
+        code.put4(target);
+    }
+
+    /**
+     * Pads the code with zeros to the next multiple of four, as required after switch instructions
+     *
+     * @param code the code
+     */
+    private static void align(CodeBuffer code) {
+        while (code.size() % 4 != 0) {
+            code.put1(0);
+        }
+    }
+
+    private MatcherCompiler() {
+    }
+
+    /**
+     * Defines a single compiled matcher class
+     */
+    private static final class MatcherLoader extends ClassLoader {
+
+        /**
+         * Creates a loader which delegates to the given parent
+         *
+         * @param parent the parent loader
+         */
+        private MatcherLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Defines a class
+         *
+         * @param name the binary name of the class
+         * @param classFile the class file
+         *
+         * @return the class
+         */
+        private Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the states and transitions of an automaton whose states are identified by name and whose symbols are
+ * characters, as they are found in a text format
+ * <p>
+ * The transitions are collected in flat arrays, the automaton is created once all of them are known. Symbols are
+ * numbered in character order, states in the order of their first occurrence except that the initial state is always
+ * state 0.
+ */
+final class AutomatonBuilder {
+
+    /**
+     * The IDs of the states by name
+     */
+    private final Map<String, Integer> stateIds = new HashMap<>();
+
+    /**
+     * The names of the states by ID
+     */
+    private String[] stateNames = new String[16];
+
+    /**
+     * The final states
+     */
+    private final BitSet finalStates = new BitSet();
+
+    /**
+     * The collected transitions: source, symbol and target of transition i at index 3i, 3i + 1 and 3i + 2
+     */
+    private int[] transitions = new int[48];
+
+    /**
+     * The number of collected transitions
+     */
+    private int transitionCount;
+
+    /**
+     * The symbols which occur in the transitions
+     */
+    private final BitSet symbols = new BitSet();
+
+    /**
+     * The initial state, -1 if it is not known yet
+     */
+    private int initialState = -1;
+
+    /**
+     * Returns the ID of the state with the given name, creating the state if it does not exist yet
+     *
+     * @param name the name of the state
+     *
+     * @return the ID of the state
+     */
+    int state(String name) {
+        Integer id = stateIds.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = stateIds.size();
+        stateIds.put(name, newId);
+        if (newId == stateNames.length) {
+            stateNames = Arrays.copyOf(stateNames, newId * 2);
+        }
+        stateNames[newId] = name;
+        return newId;
+    }
+
+    /**
+     * Checks whether a state exists
+     *
+     * @param name the name of the state
+     *
+     * @return true if the state was created already
+     */
+    boolean contains(String name) {
+        return stateIds.containsKey(name);
+    }
+
+    /**
+     * Marks a state as the initial state
+     *
+     * @param q the ID of the state
+     *
+     * @throws IOException if another state is the initial state
+     */
+    void makeInitial(int q) throws IOException {
+        if (initialState != -1 && initialState != q) {
+            throw new IOException("More than one initial state: " + stateNames[initialState] + ", " + stateNames[q]);
+        }
+        initialState = q;
+    }
+
+    /**
+     * Marks a state as a final state
+     *
+     * @param q the ID of the state
+     */
+    void makeFinal(int q) {
+        finalStates.set(q);
+    }
+
+    /**
+     * Adds a transition
+     *
+     * @param from the ID of the source state
+     * @param symbol the symbol
+     * @param to the ID of the target state
+     */
+    void addTransition(int from, char symbol, int to) {
+        if (3 * transitionCount == transitions.length) {
+            transitions = Arrays.copyOf(transitions, transitions.length * 2);
+        }
+        transitions[3 * transitionCount] = from;
+        transitions[3 * transitionCount + 1] = symbol;
+        transitions[3 * transitionCount + 2] = to;
+        transitionCount++;
+        symbols.set(symbol);
+    }
+
+    /**
+     * Creates the automaton
+     *
+     * @return the automaton with its labels
+     *
+     * @throws IOException if there is no initial state or the transitions are not deterministic
+     */
+    LabeledDFA build() throws IOException {
+        if (initialState == -1) {
+            throw new IOException("No initial state");
+        }
+
+        int n = stateIds.size();
+        char[] alphabet = new char[symbols.cardinality()];
+        int k = 0;
+        for (int c = symbols.nextSetBit(0); c >= 0; c = symbols.nextSetBit(c + 1)) {
+            alphabet[k++] = (char) c;
+        }
+
+        // Swap the initial state with state 0
+        int[] newIds = new int[n];
+        Arrays.setAll(newIds, q -> q);
+        newIds[0] = initialState;
+        newIds[initialState] = 0;
+        String[] names = new String[n];
+        DFA dfa = new DFA(n, k);
+        for (int q = 0; q < n; q++) {
+            names[newIds[q]] = stateNames[q];
+            if (finalStates.get(q)) {
+                dfa.makeFinal(newIds[q]);
+            }
+        }
+        for (int i = 0; i < transitionCount; i++) {
+            int from = newIds[transitions[3 * i]];
+            int symbol = Arrays.binarySearch(alphabet, (char) transitions[3 * i + 1]);
+            int to = newIds[transitions[3 * i + 2]];
+            int existing = dfa.getTransition(from, symbol);
+            if (existing == -1) {
+                dfa.createTransition(from, symbol, to);
+            } else if (existing != to) {
+                throw new IOException("Nondeterministic transitions for " + names[from] + " and symbol "
+                        + alphabet[symbol]);
+            }
+        }
+        return new LabeledDFA(dfa, new String(alphabet), names);
+    }
+}
@@ -0,0 +1,190 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads deterministic finite automata in the binary format written by {@link DFAWriter}
+ * <p>
+ * The input is validated completely (including its checksum) before the automaton is created, so malformed input
+ * results in an {@link IOException} rather than an inconsistent automaton.
+ */
+public final class DFAReader {
+
+    /**
+     * The initial size of the buffer which collects the input from a channel
+     */
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Reads an automaton from the given channel. Exactly the bytes of the automaton are consumed
+     *
+     * @param channel the channel. It is not closed
+     *
+     * @return the automaton
+     *
+     * @throws IOException if reading from the channel fails or the input is malformed
+     */
+    public static DFA read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(DFAWriter.HEADER_SIZE);
+        readFully(channel, header);
+        long size = validateHeader(header);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Automaton too large: " + size + " bytes");
+        }
+
+        // The size comes from untrusted input, so the buffer only grows as the data actually arrives
+        ByteBuffer input = ByteBuffer.allocate((int) Math.min(size, INITIAL_BUFFER_SIZE));
+        header.flip();
+        input.put(header);
+        while (input.position() < size) {
+            if (!input.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate((int) Math.min(size, 2L * input.capacity()));
+                input.flip();
+                input = larger.put(input);
+            }
+            if (channel.read(input) < 0) {
+                throw new EOFException("Truncated automaton");
+            }
+        }
+        input.flip();
+        return decode(input);
+    }
+
+    /**
+     * Reads an automaton from the given file. The file is mapped into memory instead of being copied into a buffer
+     *
+     * @param file the file
+     *
+     * @return the automaton
+     *
+     * @throws IOException if reading the file fails or its contents are malformed
+     */
+    public static DFA read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Automaton too large: " + channel.size() + " bytes");
+            }
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Decodes an automaton
+     *
+     * @param input the encoded automaton, from its position to its limit
+     *
+     * @return the automaton
+     *
+     * @throws IOException if the input is malformed
+     */
+    private static DFA decode(ByteBuffer input) throws IOException {
+        if (input.remaining() < DFAWriter.HEADER_SIZE) {
+            throw new IOException("Truncated automaton");
+        }
+        long size = validateHeader(input.duplicate());
+        if (input.remaining() != size) {
+            throw new IOException("Expected " + size + " bytes, found " + input.remaining());
+        }
+
+        ByteBuffer checked = input.duplicate();
+        checked.limit(checked.limit() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(checked);
+        if ((int) crc.getValue() != input.getInt(input.limit() - 4)) {
+            throw new IOException("Checksum mismatch");
+        }
+
+        input.position(input.position() + 8);
+        int n = input.getInt();
+        int k = input.getInt();
+        int bits = input.get();
+        DFA dfa = new DFA(n, k);
+        long mask = (1L << bits) - 1;
+        long accumulator = 0;
+        int available = 0;
+        for (int q = 0; q < n; q++) {
+            for (int e = 0; e < k; e++) {
+                while (available < bits) {
+                    accumulator = (accumulator << 8) | (input.get() & 0xFF);
+                    available += 8;
+                }
+                available -= bits;
+                int target = (int) ((accumulator >>> available) & mask) - 1;
+                if (target >= n) {
+                    throw new IOException("Invalid transition target: " + target);
+                }
+                if (target != -1) {
+                    dfa.createTransition(q, e, target);
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i += 8) {
+            int finals = input.get();
+            for (int j = 0; j < 8 && i + j < n; j++) {
+                if ((finals & (1 << j)) != 0) {
+                    dfa.makeFinal(i + j);
+                }
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Validates a header
+     *
+     * @param header the header, starting at its position
+     *
+     * @return the size of the encoded automaton in bytes
+     *
+     * @throws IOException if the header is malformed
+     */
+    private static long validateHeader(ByteBuffer header) throws IOException {
+        if (header.getInt() != DFAWriter.MAGIC) {
+            throw new IOException("Not an automaton");
+        }
+        int version = header.getInt();
+        if (version != DFAWriter.VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+        int n = header.getInt();
+        int k = header.getInt();
+        int bits = header.get();
+        if (n < 0 || k < 0 || (long) n * k > Integer.MAX_VALUE) {
+            throw new IOException("Invalid size: " + n + " states, " + k + " symbols");
+        }
+        if (bits != DFAWriter.bitsPerTransition(n)) {
+            throw new IOException("Invalid number of bits per transition: " + bits);
+        }
+        return DFAWriter.encodedSize(n, k);
+    }
+
+    /**
+     * Reads from a channel until the buffer is full, then flips the buffer
+     *
+     * @param channel the channel
+     * @param buffer the buffer
+     *
+     * @throws IOException if the channel ends before the buffer is full
+     */
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Truncated automaton");
+            }
+        }
+        buffer.flip();
+    }
+
+    private DFAReader() {
+    }
+}
@@ -0,0 +1,204 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Writes deterministic finite automata in a compact binary format which can be read by {@link DFAReader}
+ * <p>
+ * The format consists of (all integers in big endian byte order):
+ * <ul>
+ * <li>a header: the magic number "D2EA", the format version, the number of states, the number of symbols and the
+ * number of bits per transition</li>
+ * <li>the transition table in row-major order (states x symbols). Every transition is stored as its target + 1 (0 for
+ * a missing transition) in the smallest number of bits which can hold the number of states, packed without padding
+ * starting with the most significant bit. The last byte is padded with zeros</li>
+ * <li>the final states as a bitmap, one bit per state starting with the least significant bit of the first byte</li>
+ * <li>the CRC-32 of everything before it</li>
+ * </ul>
+ */
+public final class DFAWriter {
+
+    /**
+     * The magic number at the start of the format ("D2EA")
+     */
+    static final int MAGIC = 0x44324541;
+
+    /**
+     * The version of the format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The size of the header: magic, version, state count, symbol count, bits per transition
+     */
+    static final int HEADER_SIZE = 17;
+
+    /**
+     * The size of the buffer which collects the output
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes an automaton to the given channel
+     *
+     * @param dfa the automaton
+     * @param channel the channel. It is not closed
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    public static void write(DFA dfa, WritableByteChannel channel) throws IOException {
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        int bits = bitsPerTransition(n);
+        Output out = new Output(channel);
+        out.buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(k).put((byte) bits);
+
+        long accumulator = 0;
+        int pending = 0;
+        for (int q = 0; q < n; q++) {
+            for (int e = 0; e < k; e++) {
+                accumulator = (accumulator << bits) | (dfa.getTransition(q, e) + 1);
+                pending += bits;
+                while (pending >= 8) {
+                    pending -= 8;
+                    out.put((byte) (accumulator >>> pending));
+                }
+            }
+        }
+        if (pending > 0) {
+            out.put((byte) (accumulator << (8 - pending)));
+        }
+
+        for (int i = 0; i < n; i += 8) {
+            int finals = 0;
+            for (int j = 0; j < 8 && i + j < n; j++) {
+                if (dfa.isFinal(i + j)) {
+                    finals |= 1 << j;
+                }
+            }
+            out.put((byte) finals);
+        }
+        out.finish();
+    }
+
+    /**
+     * Writes an automaton to the given file, replacing its contents
+     *
+     * @param dfa the automaton
+     * @param file the file
+     *
+     * @throws IOException if writing to the file fails
+     */
+    public static void write(DFA dfa, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(dfa, channel);
+        }
+    }
+
+    /**
+     * Computes the number of bits which are needed to store a transition
+     *
+     * @param stateCount the number of states
+     *
+     * @return the number of bits which can hold every value from 0 to the number of states
+     */
+    static int bitsPerTransition(int stateCount) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(stateCount));
+    }
+
+    /**
+     * Computes the size of an encoded automaton
+     *
+     * @param stateCount the number of states
+     * @param symbolCount the number of symbols
+     *
+     * @return the size in bytes, including header and checksum
+     */
+    static long encodedSize(int stateCount, int symbolCount) {
+        long transitionBits = (long) stateCount * symbolCount * bitsPerTransition(stateCount);
+        return HEADER_SIZE + (transitionBits + 7) / 8 + (stateCount + 7) / 8 + 4;
+    }
+
+    private DFAWriter() {
+    }
+
+    /**
+     * Collects the output in a buffer and computes its checksum
+     */
+    private static final class Output {
+
+        /**
+         * The channel which receives the output
+         */
+        private final WritableByteChannel channel;
+
+        /**
+         * The buffer which collects the output
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * The checksum of the output which has been written to the channel
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Creates an output
+         *
+         * @param channel the channel which receives the output
+         */
+        private Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Appends a byte to the output
+         *
+         * @param b the byte
+         *
+         * @throws IOException if writing to the channel fails
+         */
+        private void put(byte b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put(b);
+        }
+
+        /**
+         * Writes the buffered output and the checksum to the channel
+         *
+         * @throws IOException if writing to the channel fails
+         */
+        private void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * Writes the buffered output to the channel
+         *
+         * @throws IOException if writing to the channel fails
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads and writes deterministic finite automata in the Graphviz DOT language
+ * <p>
+ * The reader understands the subset of DOT which is used to draw automata:
+ * <ul>
+ * <li>Final states are nodes with {@code shape=doublecircle} or {@code peripheries=2}, either as an attribute of the
+ * node or as the default set by a preceding {@code node [...]} statement</li>
+ * <li>The initial state is the target of an edge from a node with {@code shape=point} or {@code shape=none}, or from a
+ * node whose name starts with {@code __start}. Such nodes have to be declared before the edge and are not states</li>
+ * <li>Every other edge needs a {@code label} which is either a single character or a comma separated list of single
+ * characters (surrounding spaces are ignored), one transition is created per character</li>
+ * </ul>
+ * Other attributes and graph attribute statements are ignored. Subgraphs, undirected graphs, HTML strings and string
+ * concatenation are not supported. The input is parsed in a single pass without building a graph.
+ */
+public final class DotFormat {
+
+    /**
+     * Reads an automaton
+     *
+     * @param reader the input. It is not closed
+     *
+     * @return the automaton. The states are named by their node IDs
+     *
+     * @throws IOException if reading fails or the input is malformed
+     */
+    public static LabeledDFA read(Reader reader) throws IOException {
+        Lexer lexer = new Lexer(new TextInput(reader));
+        AutomatonBuilder builder = new AutomatonBuilder();
+        Set<String> startMarkers = new HashSet<>();
+        Attributes defaults = new Attributes();
+
+        if (lexer.nextIdEquals("strict")) {
+            lexer.next();
+        }
+        if (!lexer.nextIdEquals("digraph")) {
+            throw lexer.error("Expected digraph");
+        }
+        lexer.next();
+        if (lexer.peek() == Lexer.ID) {
+            lexer.next();
+        }
+        lexer.expect('{');
+
+        while (lexer.peek() != '}') {
+            if (lexer.peek() == ';') {
+                lexer.next();
+                continue;
+            }
+            if (lexer.nextIdEquals("subgraph") || lexer.peek() == '{') {
+                throw lexer.error("Subgraphs are not supported");
+            }
+            String id = lexer.expectId();
+
+            if ("graph".equalsIgnoreCase(id) || "edge".equalsIgnoreCase(id)) {
+                readAttributes(lexer, new Attributes());
+                continue;
+            }
+            if ("node".equalsIgnoreCase(id)) {
+                readAttributes(lexer, defaults);
+                continue;
+            }
+            if (lexer.peek() == '=') {
+                // Graph attribute
+                lexer.next();
+                lexer.expectId();
+                continue;
+            }
+
+            if (lexer.peek() != Lexer.ARROW) {
+                // Node statement
+                Attributes attributes = new Attributes();
+                readAttributes(lexer, attributes);
+                attributes.inherit(defaults);
+                declare(builder, startMarkers, id, attributes);
+                continue;
+            }
+
+            // Edge statement, possibly a chain of edges which share the attributes
+            int chainLength = 1;
+            String[] chain = {id, null};
+            while (lexer.peek() == Lexer.ARROW) {
+                lexer.next();
+                if (chainLength == chain.length) {
+                    chain = Arrays.copyOf(chain, chainLength * 2);
+                }
+                chain[chainLength++] = lexer.expectId();
+            }
+            Attributes attributes = new Attributes();
+            readAttributes(lexer, attributes);
+            for (int i = 0; i < chainLength; i++) {
+                if (!startMarkers.contains(chain[i]) && !builder.contains(chain[i])) {
+                    // Nodes which are created by edges have the default attributes
+                    declare(builder, startMarkers, chain[i], defaults);
+                }
+            }
+            for (int i = 1; i < chainLength; i++) {
+                if (startMarkers.contains(chain[i - 1])) {
+                    builder.makeInitial(builder.state(chain[i]));
+                } else {
+                    addTransitions(builder, builder.state(chain[i - 1]), attributes.label, builder.state(chain[i]));
+                }
+            }
+        }
+        lexer.next();
+        if (lexer.peek() != Lexer.END) {
+            throw lexer.error("Expected end of input");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes an automaton. The states are named q0, q1, ... and the initial state is marked by an edge from a point
+     *
+     * @param dfa the automaton
+     * @param alphabet the characters of the symbols, the character at index i represents symbol i
+     * @param out the output
+     *
+     * @throws IOException if writing fails
+     */
+    public static void write(DFA dfa, CharSequence alphabet, Appendable out) throws IOException {
+        if (alphabet.length() < dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+
+        out.append("digraph dfa {\n    rankdir=LR;\n    __start [shape=point];\n");
+        for (int q = 0; q < dfa.stateCount(); q++) {
+            out.append("    q").append(String.valueOf(q))
+                    .append(dfa.isFinal(q) ? " [shape=doublecircle];\n" : " [shape=circle];\n");
+        }
+        out.append("    __start -> q0;\n");
+        for (int q = 0; q < dfa.stateCount(); q++) {
+            for (int e = 0; e < dfa.symbolCount(); e++) {
+                int target = dfa.getTransition(q, e);
+                if (target == -1) {
+                    continue;
+                }
+                out.append("    q").append(String.valueOf(q)).append(" -> q").append(String.valueOf(target))
+                        .append(" [label=\"");
+                char c = alphabet.charAt(e);
+                if (c == '"' || c == '\\') {
+                    out.append('\\');
+                }
+                out.append(c).append("\"];\n");
+            }
+        }
+        out.append("}\n");
+    }
+
+    /**
+     * Declares a node as a state or as the marker of the initial state
+     *
+     * @param builder the builder
+     * @param startMarkers the names of the markers of the initial state
+     * @param id the ID of the node
+     * @param attributes the attributes of the node, including the default attributes
+     */
+    private static void declare(AutomatonBuilder builder, Set<String> startMarkers, String id, Attributes attributes) {
+        if (attributes.isStartMarker() || id.startsWith("__start")) {
+            startMarkers.add(id);
+            return;
+        }
+        int q = builder.state(id);
+        if (attributes.isFinal()) {
+            builder.makeFinal(q);
+        }
+    }
+
+    /**
+     * Adds the transitions of an edge
+     *
+     * @param builder the builder
+     * @param from the source state
+     * @param label the label of the edge
+     * @param to the target state
+     *
+     * @throws IOException if the label is missing or malformed
+     */
+    private static void addTransitions(AutomatonBuilder builder, int from, String label, int to) throws IOException {
+        if (label == null || label.isEmpty()) {
+            throw new IOException("Edge without label");
+        }
+        if (label.length() == 1) {
+            builder.addTransition(from, label.charAt(0), to);
+            return;
+        }
+        for (String symbol : label.split(",", -1)) {
+            String trimmed = symbol.trim();
+            if (trimmed.length() != 1) {
+                throw new IOException("Labels have to be single characters or lists of single characters: " + label);
+            }
+            builder.addTransition(from, trimmed.charAt(0), to);
+        }
+    }
+
+    /**
+     * Reads any number of attribute lists
+     *
+     * @param lexer the lexer
+     * @param attributes receives the relevant attributes
+     *
+     * @throws IOException if reading fails or the input is malformed
+     */
+    private static void readAttributes(Lexer lexer, Attributes attributes) throws IOException {
+        while (lexer.peek() == '[') {
+            lexer.next();
+            while (lexer.peek() != ']') {
+                String name = lexer.expectId();
+                lexer.expect('=');
+                String value = lexer.expectId();
+                switch (name) {
+                    case "label":
+                        attributes.label = value;
+                        break;
+                    case "shape":
+                        attributes.shape = value;
+                        break;
+                    case "peripheries":
+                        attributes.peripheries = value;
+                        break;
+                    default:
+                        // Not relevant for automata
+                }
+                if (lexer.peek() == ',' || lexer.peek() == ';') {
+                    lexer.next();
+                }
+            }
+            lexer.next();
+        }
+    }
+
+    private DotFormat() {
+    }
+
+    /**
+     * The attributes of a statement which are relevant for automata
+     */
+    private static final class Attributes {
+
+        /**
+         * The label, or null
+         */
+        private String label;
+
+        /**
+         * The shape, or null
+         */
+        private String shape;
+
+        /**
+         * The number of peripheries, or null
+         */
+        private String peripheries;
+
+        /**
+         * Uses the given attributes for the attributes which are not set
+         *
+         * @param defaults the default attributes
+         */
+        private void inherit(Attributes defaults) {
+            if (shape == null) {
+                shape = defaults.shape;
+            }
+            if (peripheries == null) {
+                peripheries = defaults.peripheries;
+            }
+        }
+
+        /**
+         * @return whether a node with these attributes is a final state
+         */
+        private boolean isFinal() {
+            return "doublecircle".equals(shape) || "2".equals(peripheries);
+        }
+
+        /**
+         * @return whether a node with these attributes marks the initial state
+         */
+        private boolean isStartMarker() {
+            return "point".equals(shape) || "none".equals(shape);
+        }
+    }
+
+    /**
+     * Splits the input into IDs and punctuation
+     */
+    private static final class Lexer {
+
+        /**
+         * The kind of an ID (identifier, numeral or quoted string)
+         */
+        private static final int ID = 'a';
+
+        /**
+         * The kind of an arrow (->)
+         */
+        private static final int ARROW = '>';
+
+        /**
+         * The kind of the end of the input
+         */
+        private static final int END = -1;
+
+        /**
+         * The input
+         */
+        private final TextInput in;
+
+        /**
+         * The kind of the next token: {@link #ID}, {@link #ARROW}, {@link #END} or a punctuation character
+         */
+        private int kind;
+
+        /**
+         * The text of the next token if it is an ID
+         */
+        private String text;
+
+        /**
+         * Creates a lexer and reads the first token
+         *
+         * @param in the input
+         *
+         * @throws IOException if reading fails or the input is malformed
+         */
+        private Lexer(TextInput in) throws IOException {
+            this.in = in;
+            advance();
+        }
+
+        /**
+         * @return the kind of the next token
+         */
+        private int peek() {
+            return kind;
+        }
+
+        /**
+         * Checks whether the next token is the given ID. Keywords are case-insensitive
+         *
+         * @param id the ID
+         *
+         * @return true if the next token is the ID
+         */
+        private boolean nextIdEquals(String id) {
+            return kind == ID && id.equalsIgnoreCase(text);
+        }
+
+        /**
+         * Consumes the next token
+         *
+         * @return the text of the token if it is an ID, null otherwise
+         *
+         * @throws IOException if reading fails or the input is malformed
+         */
+        private String next() throws IOException {
+            String current = text;
+            advance();
+            return current;
+        }
+
+        /**
+         * Consumes the next token, which has to be an ID
+         *
+         * @return the ID
+         *
+         * @throws IOException if reading fails or the next token is not an ID
+         */
+        private String expectId() throws IOException {
+            if (kind != ID) {
+                throw error("Expected an ID");
+            }
+            return next();
+        }
+
+        /**
+         * Consumes the next token, which has to be the given punctuation character
+         *
+         * @param punctuation the punctuation character
+         *
+         * @throws IOException if reading fails or the next token is a different token
+         */
+        private void expect(char punctuation) throws IOException {
+            if (kind != punctuation) {
+                throw error("Expected '" + punctuation + "'");
+            }
+            next();
+        }
+
+        /**
+         * Creates an exception for malformed input at the next token
+         *
+         * @param message the description of the problem
+         *
+         * @return the exception
+         */
+        private IOException error(String message) {
+            String found;
+            if (kind == ID) {
+                found = "\"" + text + "\"";
+            } else if (kind == ARROW) {
+                found = "->";
+            } else if (kind == END) {
+                found = "end of input";
+            } else {
+                found = "'" + (char) kind + "'";
+            }
+            return new IOException(message + ", found " + found + " in line " + in.line());
+        }
+
+        /**
+         * Reads the next token
+         *
+         * @throws IOException if reading fails or the input is malformed
+         */
+        private void advance() throws IOException {
+            text = null;
+            skipWhitespaceAndComments();
+            int c = in.peek();
+            if (c == -1) {
+                kind = END;
+            } else if (c == '"') {
+                in.read();
+                kind = ID;
+                text = readQuoted();
+            } else if (c == '-') {
+                in.read();
+                if (in.consume('>')) {
+                    kind = ARROW;
+                } else if (in.peek() == '-') {
+                    throw in.error("Undirected graphs are not supported");
+                } else {
+                    kind = ID;
+                    text = "-" + readUnquoted();
+                }
+            } else if (isIdStart(c) || c == '.' || Character.isDigit(c)) {
+                kind = ID;
+                text = readUnquoted();
+            } else if ("{}[]=;,".indexOf(c) >= 0) {
+                in.read();
+                kind = c;
+            } else {
+                throw in.error("Unsupported token");
+            }
+        }
+
+        /**
+         * Skips whitespace and comments (//, /* and #)
+         *
+         * @throws IOException if reading fails or a comment is not terminated
+         */
+        private void skipWhitespaceAndComments() throws IOException {
+            while (true) {
+                in.skipWhitespace();
+                if (in.consume('#')) {
+                    skipLine();
+                } else if (in.consume('/')) {
+                    if (in.consume('/')) {
+                        skipLine();
+                    } else if (in.consume('*')) {
+                        int previous = 0;
+                        int c;
+                        while ((c = in.read()) != '/' || previous != '*') {
+                            if (c == -1) {
+                                throw in.error("Unterminated comment");
+                            }
+                            previous = c;
+                        }
+                    } else {
+                        throw in.error("Unsupported token");
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Skips the rest of the current line
+         *
+         * @throws IOException if reading fails
+         */
+        private void skipLine() throws IOException {
+            int c;
+            do {
+                c = in.read();
+            } while (c != -1 && c != '\n');
+        }
+
+        /**
+         * Reads the rest of a quoted string. \" and \\ are unescaped, a backslash before a line break continues the line
+         *
+         * @return the string
+         *
+         * @throws IOException if reading fails or the string is not terminated
+         */
+        private String readQuoted() throws IOException {
+            StringBuilder builder = new StringBuilder();
+            while (true) {
+                int c = in.read();
+                if (c == -1) {
+                    throw in.error("Unterminated string");
+                }
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c == '\\') {
+                    int escaped = in.peek();
+                    if (escaped == '"' || escaped == '\\') {
+                        builder.append((char) in.read());
+                        continue;
+                    }
+                    if (escaped == '\n') {
+                        in.read();
+                        continue;
+                    }
+                }
+                builder.append((char) c);
+            }
+        }
+
+        /**
+         * Reads an identifier or a numeral
+         *
+         * @return the text
+         *
+         * @throws IOException if reading fails
+         */
+        private String readUnquoted() throws IOException {
+            StringBuilder builder = new StringBuilder();
+            while (isIdStart(in.peek()) || Character.isDigit(in.peek()) || in.peek() == '.') {
+                builder.append((char) in.read());
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Checks whether a character can start an identifier
+         *
+         * @param c the character
+         *
+         * @return true if the character is a letter, an underscore or any character outside of ASCII
+         */
+        private static boolean isIdStart(int c) {
+            return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c >= 0x80;
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DFAFingerprint;
+import nge.lk.stuff.dfa2exp.model.DFATrimmer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store for the results of converting automata to regular expressions
+ * <p>
+ * Like the {@link nge.lk.stuff.dfa2exp.transform.ExpressionCache}, expressions are keyed by the fingerprint of the
+ * trimmed automaton and the characters of the alphabet, so a store must only be used with a single pipeline
+ * configuration. The store consists of two files in its directory:
+ * <ul>
+ * <li>{@code expressions.dat}, an append-only sequence of records. Each record holds the SHA-256 digest of its key,
+ * the expression in UTF-8 and a checksum</li>
+ * <li>{@code expressions.idx}, a memory-mapped open addressing hash table from the first 8 bytes of the digest to the
+ * position of the record. A lookup reads the matching record and compares the full digest</li>
+ * </ul>
+ * The index is derived from the data file: records which were appended after the index was last updated are indexed
+ * when the store is opened, a damaged index is rebuilt and a torn record at the end of the data file (left by a crash
+ * during a write) is discarded. Storing an expression for an existing key appends a new record which replaces the old
+ * one. The directory is locked while the store is open, so only one store can use it at a time.
+ */
+public class ExpressionStore implements Closeable {
+
+    /**
+     * The first bytes of the data file ("D2ED")
+     */
+    private static final int DATA_MAGIC = 0x44324544;
+
+    /**
+     * The first bytes of the index file ("D2EI")
+     */
+    private static final int INDEX_MAGIC = 0x44324549;
+
+    /**
+     * The version of the file formats
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the data file header: magic, version
+     */
+    private static final int DATA_HEADER_SIZE = 8;
+
+    /**
+     * The size of a record header: digest, payload length, checksum
+     */
+    private static final int RECORD_HEADER_SIZE = 40;
+
+    /**
+     * The size of the digest of a key
+     */
+    private static final int DIGEST_SIZE = 32;
+
+    /**
+     * The size of the index file header: magic, version, capacity, count, indexed data length, reserved
+     */
+    private static final int INDEX_HEADER_SIZE = 32;
+
+    /**
+     * The size of an index slot: the first 8 bytes of the digest and the position of the record (0 if empty)
+     */
+    private static final int SLOT_SIZE = 16;
+
+    /**
+     * The number of slots of a new index
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The maximum number of slots, the mapped index has to stay below 2 GiB
+     */
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    /**
+     * The data file
+     */
+    private final FileChannel data;
+
+    /**
+     * The index file
+     */
+    private final FileChannel indexFile;
+
+    /**
+     * The lock on the data file
+     */
+    private final FileLock lock;
+
+    /**
+     * The mapped index file
+     */
+    private MappedByteBuffer index;
+
+    /**
+     * The number of slots of the index, a power of two
+     */
+    private int capacity;
+
+    /**
+     * The number of stored expressions
+     */
+    private int count;
+
+    /**
+     * The length of the data file
+     */
+    private long dataLength;
+
+    /**
+     * Opens the store in the given directory, creating it if it does not exist
+     *
+     * @param directory the directory of the store
+     *
+     * @throws IOException if the store can not be opened or is used by another store
+     */
+    public ExpressionStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        data = FileChannel.open(directory.resolve("expressions.dat"), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        FileChannel openedIndex = null;
+        try {
+            lock = lockData();
+            openedIndex = FileChannel.open(directory.resolve("expressions.idx"), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            indexFile = openedIndex;
+            openData();
+            openIndex();
+        } catch (IOException | RuntimeException e) {
+            if (openedIndex != null) {
+                openedIndex.close();
+            }
+            data.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up the expression for the given automaton
+     *
+     * @param dfa the automaton
+     * @param alphabet the alphabet of the automaton. Only the first {@link DFA#symbolCount()} characters are relevant
+     *
+     * @return the stored expression, or null if there is none
+     *
+     * @throws IOException if the store can not be read
+     */
+    public synchronized String get(DFA dfa, CharSequence alphabet) throws IOException {
+        byte[] digest = digest(dfa, alphabet);
+        long position = find(digest);
+        if (position == 0) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, position);
+        ByteBuffer payload = ByteBuffer.allocate(header.getInt(DIGEST_SIZE));
+        readFully(payload, position + RECORD_HEADER_SIZE);
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    /**
+     * Stores the expression for the given automaton, replacing a previously stored expression
+     *
+     * @param dfa the automaton
+     * @param alphabet the alphabet of the automaton. Only the first {@link DFA#symbolCount()} characters are relevant
+     * @param expression the expression
+     *
+     * @throws IOException if the store can not be written
+     */
+    public synchronized void put(DFA dfa, CharSequence alphabet, String expression) throws IOException {
+        byte[] digest = digest(dfa, alphabet);
+        ByteBuffer payload;
+        try {
+            payload = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(expression));
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("The expression contains unpaired surrogates", e);
+        }
+        int length = payload.remaining();
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.put(digest);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(payload);
+        record.putInt(DIGEST_SIZE + 4, checksum(record.array(), length));
+        record.flip();
+
+        long position = dataLength;
+        while (record.hasRemaining()) {
+            data.write(record, position + record.position());
+        }
+        dataLength += RECORD_HEADER_SIZE + length;
+        insert(digest, position);
+        writeIndexHeader(dataLength);
+    }
+
+    /**
+     * @return the number of stored expressions
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Writes all changes to the storage device
+     *
+     * @throws IOException if the files can not be written
+     */
+    public synchronized void flush() throws IOException {
+        data.force(false);
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!data.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+            lock.release();
+        } finally {
+            indexFile.close();
+            data.close();
+        }
+    }
+
+    /**
+     * Locks the data file
+     *
+     * @return the lock
+     *
+     * @throws IOException if the data file is locked by another store
+     */
+    private FileLock lockData() throws IOException {
+        FileLock fileLock;
+        try {
+            fileLock = data.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            throw new IOException("The store is used by another process");
+        }
+        return fileLock;
+    }
+
+    /**
+     * Validates the header of the data file, or writes it if the file is empty
+     *
+     * @throws IOException if the data file is not a data file of a store
+     */
+    private void openData() throws IOException {
+        dataLength = data.size();
+        ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+        if (dataLength == 0) {
+            header.putInt(DATA_MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                data.write(header, header.position());
+            }
+            dataLength = DATA_HEADER_SIZE;
+            return;
+        }
+
+        if (dataLength < DATA_HEADER_SIZE) {
+            throw new IOException("Not an expression store");
+        }
+        readFully(header, 0);
+        if (header.getInt(0) != DATA_MAGIC) {
+            throw new IOException("Not an expression store");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported store version: " + header.getInt(4));
+        }
+    }
+
+    /**
+     * Maps the index and indexes the records which are not indexed yet. The index is rebuilt if it is damaged
+     *
+     * @throws IOException if the files can not be read or written
+     */
+    private void openIndex() throws IOException {
+        long indexed = 0;
+        if (indexFile.size() >= INDEX_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (indexFile.read(header, header.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            int storedCapacity = header.getInt(8);
+            long storedIndexed = header.getLong(16);
+            boolean valid = header.getInt(0) == INDEX_MAGIC && header.getInt(4) == VERSION
+                    && storedCapacity >= INITIAL_CAPACITY && storedCapacity <= MAX_CAPACITY
+                    && Integer.bitCount(storedCapacity) == 1
+                    && indexFile.size() >= INDEX_HEADER_SIZE + (long) storedCapacity * SLOT_SIZE
+                    && storedIndexed >= DATA_HEADER_SIZE && storedIndexed <= dataLength;
+            if (valid) {
+                capacity = storedCapacity;
+                count = header.getInt(12);
+                indexed = storedIndexed;
+            }
+        }
+
+        if (indexed == 0) {
+            capacity = INITIAL_CAPACITY;
+            count = 0;
+            map();
+            writeIndexHeader(0);
+            indexed = DATA_HEADER_SIZE;
+        } else {
+            map();
+        }
+        recover(indexed);
+    }
+
+    /**
+     * Indexes the records starting at the given position and discards a torn record at the end of the data file
+     *
+     * @param position the position of the first record which is not indexed
+     *
+     * @throws IOException if the files can not be read or written
+     */
+    private void recover(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= dataLength) {
+            readFully(header, position);
+            int length = header.getInt(DIGEST_SIZE);
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > dataLength) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+            readFully(record, position);
+            int stored = record.getInt(DIGEST_SIZE + 4);
+            record.putInt(DIGEST_SIZE + 4, 0);
+            if (checksum(record.array(), length) != stored) {
+                break;
+            }
+
+            byte[] digest = new byte[DIGEST_SIZE];
+            System.arraycopy(record.array(), 0, digest, 0, DIGEST_SIZE);
+            insert(digest, position);
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        if (position < dataLength) {
+            data.truncate(position);
+            dataLength = position;
+        }
+        writeIndexHeader(dataLength);
+    }
+
+    /**
+     * Maps the index file for the current capacity and clears all slots if the index is new
+     *
+     * @throws IOException if the index file can not be mapped
+     */
+    private void map() throws IOException {
+        index = indexFile.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        if (count == 0) {
+            for (int i = 0; i < capacity; i++) {
+                index.putLong(INDEX_HEADER_SIZE + i * SLOT_SIZE + 8, 0);
+            }
+        }
+    }
+
+    /**
+     * Writes the header of the index
+     *
+     * @param indexed the length of the data file which is covered by the index. 0 marks the index as damaged
+     */
+    private void writeIndexHeader(long indexed) {
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, capacity);
+        index.putInt(12, count);
+        index.putLong(16, indexed);
+    }
+
+    /**
+     * Finds the record of the given digest
+     *
+     * @param digest the digest of the key
+     *
+     * @return the position of the record, or 0 if there is none
+     *
+     * @throws IOException if the data file can not be read
+     */
+    private long find(byte[] digest) throws IOException {
+        long prefix = prefix(digest);
+        int mask = capacity - 1;
+        for (int i = (int) prefix & mask; ; i = (i + 1) & mask) {
+            int slot = INDEX_HEADER_SIZE + i * SLOT_SIZE;
+            long position = index.getLong(slot + 8);
+            if (position == 0) {
+                return 0;
+            }
+            if (index.getLong(slot) == prefix && hasDigest(position, digest)) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Inserts a record into the index
+     *
+     * @param digest the digest of the key of the record
+     * @param position the position of the record. It replaces the position of an indexed record with the same digest
+     *
+     * @throws IOException if the files can not be read or written
+     */
+    private void insert(byte[] digest, long position) throws IOException {
+        if ((count + 1) * 2L > capacity) {
+            grow();
+        }
+
+        long prefix = prefix(digest);
+        int mask = capacity - 1;
+        for (int i = (int) prefix & mask; ; i = (i + 1) & mask) {
+            int slot = INDEX_HEADER_SIZE + i * SLOT_SIZE;
+            long stored = index.getLong(slot + 8);
+            if (stored == 0) {
+                index.putLong(slot, prefix);
+                index.putLong(slot + 8, position);
+                count++;
+                return;
+            }
+            if (index.getLong(slot) == prefix && hasDigest(stored, digest)) {
+                index.putLong(slot + 8, position);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Doubles the capacity of the index. The index is marked as damaged until all slots are copied
+     *
+     * @throws IOException if the index file can not be written
+     */
+    private void grow() throws IOException {
+        if (capacity == MAX_CAPACITY) {
+            throw new IOException("The index is full");
+        }
+
+        long indexed = index.getLong(16);
+        long[] slots = new long[count * 2];
+        int n = 0;
+        for (int i = 0; i < capacity; i++) {
+            int slot = INDEX_HEADER_SIZE + i * SLOT_SIZE;
+            if (index.getLong(slot + 8) != 0) {
+                slots[n++] = index.getLong(slot);
+                slots[n++] = index.getLong(slot + 8);
+            }
+        }
+
+        writeIndexHeader(0);
+        index.force();
+        capacity *= 2;
+        count = 0;
+        map();
+        int mask = capacity - 1;
+        for (int j = 0; j < n; j += 2) {
+            int i = (int) slots[j] & mask;
+            while (index.getLong(INDEX_HEADER_SIZE + i * SLOT_SIZE + 8) != 0) {
+                i = (i + 1) & mask;
+            }
+            index.putLong(INDEX_HEADER_SIZE + i * SLOT_SIZE, slots[j]);
+            index.putLong(INDEX_HEADER_SIZE + i * SLOT_SIZE + 8, slots[j + 1]);
+            count++;
+        }
+        writeIndexHeader(indexed);
+    }
+
+    /**
+     * Checks whether the record at the given position has the given digest
+     *
+     * @param position the position of the record
+     * @param digest the digest
+     *
+     * @return true if the record has the digest
+     *
+     * @throws IOException if the data file can not be read
+     */
+    private boolean hasDigest(long position, byte[] digest) throws IOException {
+        ByteBuffer stored = ByteBuffer.allocate(DIGEST_SIZE);
+        readFully(stored, position);
+        return stored.equals(ByteBuffer.wrap(digest));
+    }
+
+    /**
+     * Reads from the data file until the buffer is full. The buffer is cleared before and rewound after reading
+     *
+     * @param buffer the buffer
+     * @param position the position in the data file
+     *
+     * @throws IOException if the data file ends before the buffer is full
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.rewind();
+    }
+
+    /**
+     * Computes the checksum of a record whose checksum field is 0
+     *
+     * @param record the record
+     * @param length the length of the payload
+     *
+     * @return the checksum
+     */
+    private static int checksum(byte[] record, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, RECORD_HEADER_SIZE + length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Computes the digest of the key of an automaton
+     *
+     * @param dfa the automaton
+     * @param alphabet the alphabet of the automaton
+     *
+     * @return the SHA-256 digest of the fingerprint of the trimmed automaton and the characters of the alphabet
+     */
+    private static byte[] digest(DFA dfa, CharSequence alphabet) {
+        if (alphabet.length() < dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+        sha.update(DFAFingerprint.of(DFATrimmer.trim(dfa)).toByteArray());
+        for (int i = 0; i < dfa.symbolCount(); i++) {
+            char c = alphabet.charAt(i);
+            sha.update((byte) (c >>> 8));
+            sha.update((byte) c);
+        }
+        return sha.digest();
+    }
+
+    /**
+     * Returns the first 8 bytes of a digest
+     *
+     * @param digest the digest
+     *
+     * @return the first 8 bytes in big endian byte order
+     */
+    private static long prefix(byte[] digest) {
+        return ByteBuffer.wrap(digest).getLong();
+    }
+}
@@ -0,0 +1,199 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads and writes deterministic finite automata in the XML format of JFLAP ({@code .jff} files)
+ * <p>
+ * The reader processes the document as a stream of StAX events, so no DOM tree is built. Only finite automata
+ * ({@code <type>fa</type>}) whose transitions read single characters are supported; a nondeterministic automaton or an
+ * empty transition is rejected. DTDs and external entities are not processed.
+ */
+public final class JflapFormat {
+
+    /**
+     * The factory for StAX readers
+     */
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    /**
+     * Reads an automaton
+     *
+     * @param reader the input. It is not closed
+     *
+     * @return the automaton. The states are named by their JFLAP IDs
+     *
+     * @throws IOException if reading fails or the input is malformed
+     */
+    public static LabeledDFA read(Reader reader) throws IOException {
+        AutomatonBuilder builder = new AutomatonBuilder();
+        try {
+            XMLStreamReader xml = INPUT_FACTORY.createXMLStreamReader(reader);
+            int state = -1;
+            String from = null;
+            String to = null;
+            String read = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (xml.getLocalName()) {
+                        case "type":
+                            String type = xml.getElementText().trim();
+                            if (!"fa".equals(type)) {
+                                throw new IOException("Not a finite automaton: " + type);
+                            }
+                            break;
+                        case "state":
+                            String id = xml.getAttributeValue(null, "id");
+                            if (id == null) {
+                                throw new IOException("State without ID in line " + xml.getLocation().getLineNumber());
+                            }
+                            state = builder.state(id);
+                            break;
+                        case "initial":
+                            if (state != -1) {
+                                builder.makeInitial(state);
+                            }
+                            break;
+                        case "final":
+                            if (state != -1) {
+                                builder.makeFinal(state);
+                            }
+                            break;
+                        case "from":
+                            from = xml.getElementText().trim();
+                            break;
+                        case "to":
+                            to = xml.getElementText().trim();
+                            break;
+                        case "read":
+                            read = xml.getElementText();
+                            break;
+                        default:
+                            // Layout and other elements are not relevant
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if ("state".equals(xml.getLocalName())) {
+                        state = -1;
+                    } else if ("transition".equals(xml.getLocalName())) {
+                        int line = xml.getLocation().getLineNumber();
+                        if (from == null || to == null) {
+                            throw new IOException("Incomplete transition in line " + line);
+                        }
+                        if (read == null || read.length() != 1) {
+                            throw new IOException("Transitions have to read a single character in line " + line);
+                        }
+                        builder.addTransition(builder.state(from), read.charAt(0), builder.state(to));
+                        from = null;
+                        to = null;
+                        read = null;
+                    }
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed XML: " + e.getMessage(), e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes an automaton. The states are named q0, q1, ... and are laid out in a grid
+     *
+     * @param dfa the automaton
+     * @param alphabet the characters of the symbols, the character at index i represents symbol i
+     * @param out the output. The document declares UTF-8 as its encoding
+     *
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if the alphabet contains characters which can not be represented in XML
+     */
+    public static void write(DFA dfa, CharSequence alphabet, Appendable out) throws IOException {
+        if (alphabet.length() < dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+        for (int e = 0; e < dfa.symbolCount(); e++) {
+            char c = alphabet.charAt(e);
+            if ((c < 0x20 && c != '\t' && c != '\n' && c != '\r') || Character.isSurrogate(c) || c >= 0xFFFE) {
+                throw new IllegalArgumentException("Character can not be represented in XML: " + (int) c);
+            }
+        }
+
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n<structure>\n\t<type>fa</type>\n\t<automaton>\n");
+        for (int q = 0; q < dfa.stateCount(); q++) {
+            out.append("\t\t<state id=\"").append(String.valueOf(q)).append("\" name=\"q").append(String.valueOf(q))
+                    .append("\">\n\t\t\t<x>").append(String.valueOf(100 + q % 10 * 100))
+                    .append(".0</x>\n\t\t\t<y>").append(String.valueOf(100 + q / 10 * 100)).append(".0</y>\n");
+            if (q == 0) {
+                out.append("\t\t\t<initial/>\n");
+            }
+            if (dfa.isFinal(q)) {
+                out.append("\t\t\t<final/>\n");
+            }
+            out.append("\t\t</state>\n");
+        }
+        for (int q = 0; q < dfa.stateCount(); q++) {
+            for (int e = 0; e < dfa.symbolCount(); e++) {
+                int target = dfa.getTransition(q, e);
+                if (target == -1) {
+                    continue;
+                }
+                out.append("\t\t<transition>\n\t\t\t<from>").append(String.valueOf(q))
+                        .append("</from>\n\t\t\t<to>").append(String.valueOf(target)).append("</to>\n\t\t\t<read>");
+                appendEscaped(out, alphabet.charAt(e));
+                out.append("</read>\n\t\t</transition>\n");
+            }
+        }
+        out.append("\t</automaton>\n</structure>\n");
+    }
+
+    /**
+     * Writes a character as XML character data
+     *
+     * @param out the output
+     * @param c the character
+     *
+     * @throws IOException if writing fails
+     */
+    private static void appendEscaped(Appendable out, char c) throws IOException {
+        switch (c) {
+            case '&':
+                out.append("&amp;");
+                break;
+            case '<':
+                out.append("&lt;");
+                break;
+            case '>':
+                out.append("&gt;");
+                break;
+            default:
+                if (c < 0x20) {
+                    // Line breaks and tabs would be normalized or trimmed by other readers
+                    out.append("&#").append(String.valueOf((int) c)).append(';');
+                } else {
+                    out.append(c);
+                }
+        }
+    }
+
+    /**
+     * Creates a StAX factory which does not process DTDs and external entities
+     *
+     * @return the factory
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private JflapFormat() {
+    }
+}
@@ -0,0 +1,414 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Reads and writes deterministic finite automata as JSON transition tables
+ * <p>
+ * The automaton is a JSON object with the following members:
+ * <ul>
+ * <li>{@code alphabet}: a string, the character at index i represents symbol i</li>
+ * <li>{@code initial}: the index of the initial state, 0 if omitted</li>
+ * <li>{@code final}: an array of the indices of the final states</li>
+ * <li>{@code transitions}: an array with one row per state. Row q contains the target of the transition of state q for
+ * every symbol, or null if there is no transition</li>
+ * </ul>
+ * Example: {@code {"alphabet": "01", "initial": 0, "final": [0], "transitions": [[0, 1], [2, 0], [1, 2]]}}. Other
+ * members are ignored. The input is parsed in a single pass without building a tree of JSON values.
+ */
+public final class JsonFormat {
+
+    /**
+     * Reads an automaton
+     *
+     * @param reader the input. It is not closed
+     *
+     * @return the automaton. The states are named by their index in the input
+     *
+     * @throws IOException if reading fails or the input is malformed
+     */
+    public static LabeledDFA read(Reader reader) throws IOException {
+        TextInput in = new TextInput(reader);
+        String alphabet = null;
+        int initial = 0;
+        int[] finals = new int[16];
+        int finalCount = 0;
+        int[] table = new int[64];
+        int tableSize = 0;
+        int rowLength = -1;
+        int rowCount = 0;
+
+        in.skipWhitespace();
+        in.expect('{');
+        in.skipWhitespace();
+        boolean more = !in.consume('}');
+        while (more) {
+            in.skipWhitespace();
+            String key = readString(in);
+            in.skipWhitespace();
+            in.expect(':');
+            in.skipWhitespace();
+            switch (key) {
+                case "alphabet":
+                    alphabet = readString(in);
+                    break;
+                case "initial":
+                    initial = readInteger(in);
+                    break;
+                case "final":
+                    in.expect('[');
+                    for (boolean next = !consumeEnd(in, ']'); next; next = consumeSeparator(in, ']')) {
+                        if (finalCount == finals.length) {
+                            finals = Arrays.copyOf(finals, finalCount * 2);
+                        }
+                        finals[finalCount++] = readInteger(in);
+                    }
+                    break;
+                case "transitions":
+                    in.expect('[');
+                    for (boolean nextRow = !consumeEnd(in, ']'); nextRow; nextRow = consumeSeparator(in, ']')) {
+                        in.skipWhitespace();
+                        in.expect('[');
+                        int length = 0;
+                        for (boolean next = !consumeEnd(in, ']'); next; next = consumeSeparator(in, ']')) {
+                            if (tableSize == table.length) {
+                                table = Arrays.copyOf(table, tableSize * 2);
+                            }
+                            table[tableSize++] = readTarget(in);
+                            length++;
+                        }
+                        if (rowLength != -1 && length != rowLength) {
+                            throw in.error("Row " + rowCount + " has " + length + " entries instead of " + rowLength);
+                        }
+                        rowLength = length;
+                        rowCount++;
+                    }
+                    break;
+                default:
+                    skipValue(in);
+            }
+            more = consumeSeparator(in, '}');
+        }
+        in.skipWhitespace();
+        if (in.peek() != -1) {
+            throw in.error("Expected end of input");
+        }
+
+        if (alphabet == null) {
+            throw new IOException("No alphabet");
+        }
+        // A symbol with two indices would turn the transition table into a nondeterministic automaton
+        BitSet symbols = new BitSet();
+        for (int e = 0; e < alphabet.length(); e++) {
+            if (symbols.get(alphabet.charAt(e))) {
+                throw new IOException("Duplicate symbol in alphabet: " + alphabet.charAt(e));
+            }
+            symbols.set(alphabet.charAt(e));
+        }
+        if (rowCount == 0) {
+            throw new IOException("No states");
+        }
+        int n = rowCount;
+        int k = alphabet.length();
+        if (rowLength != k) {
+            throw new IOException("The rows have " + rowLength + " entries, the alphabet has " + k + " symbols");
+        }
+        if (initial < 0 || initial >= n) {
+            throw new IOException("Invalid initial state: " + initial);
+        }
+
+        // Swap the initial state with state 0
+        int[] newIds = new int[n];
+        Arrays.setAll(newIds, q -> q);
+        newIds[0] = initial;
+        newIds[initial] = 0;
+        DFA dfa = new DFA(n, k);
+        String[] names = new String[n];
+        for (int q = 0; q < n; q++) {
+            names[newIds[q]] = String.valueOf(q);
+            for (int e = 0; e < k; e++) {
+                int target = table[q * k + e];
+                if (target >= n) {
+                    throw new IOException("Invalid transition target: " + target);
+                }
+                if (target != -1) {
+                    dfa.createTransition(newIds[q], e, newIds[target]);
+                }
+            }
+        }
+        for (int i = 0; i < finalCount; i++) {
+            if (finals[i] < 0 || finals[i] >= n) {
+                throw new IOException("Invalid final state: " + finals[i]);
+            }
+            dfa.makeFinal(newIds[finals[i]]);
+        }
+        return new LabeledDFA(dfa, alphabet, names);
+    }
+
+    /**
+     * Writes an automaton. The initial state is state 0
+     *
+     * @param dfa the automaton
+     * @param alphabet the characters of the symbols, the character at index i represents symbol i
+     * @param out the output
+     *
+     * @throws IOException if writing fails
+     */
+    public static void write(DFA dfa, CharSequence alphabet, Appendable out) throws IOException {
+        if (alphabet.length() < dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+
+        out.append("{\"alphabet\": ");
+        writeString(alphabet.subSequence(0, dfa.symbolCount()), out);
+        out.append(", \"initial\": 0, \"final\": [");
+        boolean first = true;
+        for (int q = 0; q < dfa.stateCount(); q++) {
+            if (dfa.isFinal(q)) {
+                out.append(first ? "" : ", ").append(String.valueOf(q));
+                first = false;
+            }
+        }
+        out.append("], \"transitions\": [");
+        for (int q = 0; q < dfa.stateCount(); q++) {
+            out.append(q == 0 ? "\n  [" : ",\n  [");
+            for (int e = 0; e < dfa.symbolCount(); e++) {
+                int target = dfa.getTransition(q, e);
+                out.append(e == 0 ? "" : ", ").append(target == -1 ? "null" : String.valueOf(target));
+            }
+            out.append(']');
+        }
+        out.append("\n]}\n");
+    }
+
+    /**
+     * Consumes the end of an empty object or array
+     *
+     * @param in the input
+     * @param end the closing character
+     *
+     * @return true if the end was consumed
+     *
+     * @throws IOException if reading fails
+     */
+    private static boolean consumeEnd(TextInput in, char end) throws IOException {
+        in.skipWhitespace();
+        return in.consume(end);
+    }
+
+    /**
+     * Consumes the separator after a member or element, or the end of the object or array
+     *
+     * @param in the input
+     * @param end the closing character
+     *
+     * @return true if another member or element follows
+     *
+     * @throws IOException if reading fails or neither a separator nor the end follows
+     */
+    private static boolean consumeSeparator(TextInput in, char end) throws IOException {
+        in.skipWhitespace();
+        if (in.consume(',')) {
+            in.skipWhitespace();
+            return true;
+        }
+        in.expect(end);
+        return false;
+    }
+
+    /**
+     * Reads a transition target
+     *
+     * @param in the input
+     *
+     * @return the target, or -1 for null
+     *
+     * @throws IOException if reading fails or the input is not a target
+     */
+    private static int readTarget(TextInput in) throws IOException {
+        if (in.peek() == 'n') {
+            readLiteral(in, "null");
+            return -1;
+        }
+        int target = readInteger(in);
+        if (target < 0) {
+            throw in.error("Invalid transition target: " + target);
+        }
+        return target;
+    }
+
+    /**
+     * Reads a literal
+     *
+     * @param in the input
+     * @param literal the expected literal
+     *
+     * @throws IOException if reading fails or the input is a different literal
+     */
+    private static void readLiteral(TextInput in, String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (!in.consume(literal.charAt(i))) {
+                throw in.error("Expected " + literal);
+            }
+        }
+    }
+
+    /**
+     * Reads an integer
+     *
+     * @param in the input
+     *
+     * @return the integer
+     *
+     * @throws IOException if reading fails or the input is not an integer
+     */
+    private static int readInteger(TextInput in) throws IOException {
+        boolean negative = in.consume('-');
+        if (!Character.isDigit(in.peek())) {
+            throw in.error("Expected an integer");
+        }
+        long value = 0;
+        while (in.peek() >= '0' && in.peek() <= '9') {
+            value = value * 10 + in.read() - '0';
+            if (value > Integer.MAX_VALUE) {
+                throw in.error("Integer too large");
+            }
+        }
+        int c = in.peek();
+        if (c == '.' || c == 'e' || c == 'E') {
+            throw in.error("Expected an integer");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Reads a string
+     *
+     * @param in the input
+     *
+     * @return the string
+     *
+     * @throws IOException if reading fails or the input is not a string
+     */
+    private static String readString(TextInput in) throws IOException {
+        in.expect('"');
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c == -1 || c < 0x20) {
+                throw in.error("Unterminated string");
+            }
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append((char) c);
+                continue;
+            }
+
+            int escaped = in.read();
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append((char) escaped);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(in.peek(), 16);
+                        if (digit == -1) {
+                            throw in.error("Invalid unicode escape");
+                        }
+                        in.read();
+                        value = value * 16 + digit;
+                    }
+                    builder.append((char) value);
+                    break;
+                default:
+                    throw in.error("Invalid escape sequence");
+            }
+        }
+    }
+
+    /**
+     * Skips a value of any type without recursion
+     *
+     * @param in the input
+     *
+     * @throws IOException if reading fails or the input is malformed
+     */
+    private static void skipValue(TextInput in) throws IOException {
+        int depth = 0;
+        do {
+            in.skipWhitespace();
+            int c = in.peek();
+            if (c == '"') {
+                readString(in);
+            } else if (c == '{' || c == '[') {
+                in.read();
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    throw in.error("Expected a value");
+                }
+                in.read();
+                depth--;
+            } else if (depth > 0 && (c == ',' || c == ':')) {
+                in.read();
+            } else if (c == '-' || Character.isLetterOrDigit(c)) {
+                while (in.peek() == '-' || in.peek() == '+' || in.peek() == '.' || Character.isLetterOrDigit(in.peek())) {
+                    in.read();
+                }
+            } else {
+                throw in.error("Expected a value");
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Writes a string with JSON escapes. Control characters and surrogates are written as unicode escapes
+     *
+     * @param s the string
+     * @param out the output
+     *
+     * @throws IOException if writing fails
+     */
+    private static void writeString(CharSequence s, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20 || Character.isSurrogate(c)) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private JsonFormat() {
+    }
+}
@@ -0,0 +1,63 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+
+/**
+ * A deterministic finite automaton together with the labels of its symbols and states, as read from a text format
+ */
+public final class LabeledDFA {
+
+    /**
+     * The automaton. The initial state is state 0
+     */
+    private final DFA dfa;
+
+    /**
+     * The characters of the symbols, the character at index i represents symbol i
+     */
+    private final String alphabet;
+
+    /**
+     * The names of the states
+     */
+    private final String[] stateNames;
+
+    /**
+     * Creates a labeled automaton
+     *
+     * @param dfa the automaton
+     * @param alphabet the characters of the symbols
+     * @param stateNames the names of the states
+     */
+    LabeledDFA(DFA dfa, String alphabet, String[] stateNames) {
+        this.dfa = dfa;
+        this.alphabet = alphabet;
+        this.stateNames = stateNames;
+    }
+
+    /**
+     * @return the automaton. The initial state is state 0
+     */
+    public DFA getDFA() {
+        return dfa;
+    }
+
+    /**
+     * @return the characters of the symbols, the character at index i represents symbol i. Can be passed to
+     * {@link nge.lk.stuff.dfa2exp.transform.EquationSystem} directly
+     */
+    public String getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Returns the name of a state in the source format
+     *
+     * @param q the index of the state
+     *
+     * @return the name of the state
+     */
+    public String getStateName(int q) {
+        return stateNames[q];
+    }
+}
@@ -0,0 +1,144 @@
+package nge.lk.stuff.dfa2exp.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A buffered character input with one character of lookahead and line numbers for error messages
+ */
+final class TextInput {
+
+    /**
+     * The source of the characters
+     */
+    private final Reader reader;
+
+    /**
+     * The buffered characters
+     */
+    private final char[] buffer = new char[8192];
+
+    /**
+     * The position of the next character in the buffer
+     */
+    private int position;
+
+    /**
+     * The number of valid characters in the buffer
+     */
+    private int limit;
+
+    /**
+     * The current line, starting at 1
+     */
+    private int line = 1;
+
+    /**
+     * Creates an input
+     *
+     * @param reader the source of the characters
+     */
+    TextInput(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the next character without consuming it
+     *
+     * @return the next character, or -1 at the end of the input
+     *
+     * @throws IOException if reading fails
+     */
+    int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Consumes the next character
+     *
+     * @return the next character, or -1 at the end of the input
+     *
+     * @throws IOException if reading fails
+     */
+    int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Consumes the next character if it is the expected character
+     *
+     * @param expected the expected character
+     *
+     * @return true if the character was consumed
+     *
+     * @throws IOException if reading fails
+     */
+    boolean consume(char expected) throws IOException {
+        if (peek() == expected) {
+            read();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the next character, which has to be the expected character
+     *
+     * @param expected the expected character
+     *
+     * @throws IOException if reading fails or the next character is a different character
+     */
+    void expect(char expected) throws IOException {
+        if (!consume(expected)) {
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    /**
+     * Skips whitespace
+     *
+     * @throws IOException if reading fails
+     */
+    void skipWhitespace() throws IOException {
+        while (Character.isWhitespace(peek())) {
+            read();
+        }
+    }
+
+    /**
+     * @return the current line, starting at 1
+     */
+    int line() {
+        return line;
+    }
+
+    /**
+     * Creates an exception for malformed input at the current position
+     *
+     * @param message the description of the problem
+     *
+     * @return the exception
+     *
+     * @throws IOException if reading fails
+     */
+    IOException error(String message) throws IOException {
+        int c = peek();
+        String found = c == -1 ? "end of input" : "'" + (char) c + "'";
+        return new IOException(message + ", found " + found + " in line " + line);
+    }
+}
@@ -0,0 +1,115 @@
+package nge.lk.stuff.dfa2exp.model;
+
+import java.util.Arrays;
+
+/**
+ * The characters of the symbols of an automaton: symbol i is represented by the character at index i
+ * <p>
+ * An alphabet is a {@link CharSequence}, so it can be used wherever an alphabet string is expected. Unlike a string,
+ * large alphabets like all bytes or all characters of a Unicode block can be created without spelling them out.
+ */
+public final class Alphabet implements CharSequence {
+
+    /**
+     * The characters, or null if the alphabet is a single range
+     */
+    private final char[] characters;
+
+    /**
+     * The first character of a range alphabet
+     */
+    private final char first;
+
+    /**
+     * The number of symbols
+     */
+    private final int size;
+
+    /**
+     * Creates an alphabet
+     *
+     * @param characters the characters, or null for a range
+     * @param first the first character of a range
+     * @param size the number of symbols
+     */
+    private Alphabet(char[] characters, char first, int size) {
+        this.characters = characters;
+        this.first = first;
+        this.size = size;
+    }
+
+    /**
+     * Creates an alphabet from the given characters
+     *
+     * @param characters the characters, the character at index i represents symbol i
+     *
+     * @return the alphabet
+     *
+     * @throws IllegalArgumentException if a character occurs more than once
+     */
+    public static Alphabet of(CharSequence characters) {
+        char[] chars = characters.toString().toCharArray();
+        char[] sorted = chars.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("Duplicate symbol in alphabet: " + sorted[i]);
+            }
+        }
+        return new Alphabet(chars, '\0', chars.length);
+    }
+
+    /**
+     * Creates an alphabet of consecutive characters
+     *
+     * @param first the character of symbol 0
+     * @param last the character of the last symbol (inclusive)
+     *
+     * @return the alphabet
+     */
+    public static Alphabet range(char first, char last) {
+        if (last < first) {
+            throw new IllegalArgumentException("Invalid range: " + (int) first + ".." + (int) last);
+        }
+        return new Alphabet(null, first, last - first + 1);
+    }
+
+    /**
+     * Creates the alphabet of all byte values, where symbol i is the character with value i
+     *
+     * @return the alphabet
+     */
+    public static Alphabet bytes() {
+        return range('\0', (char) 0xFF);
+    }
+
+    @Override
+    public int length() {
+        return size;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No such symbol: " + index);
+        }
+        return characters != null ? characters[index] : (char) (first + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (characters != null) {
+            return new String(characters);
+        }
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++) {
+            chars[i] = (char) (first + i);
+        }
+        return new String(chars);
+    }
+}
@@ -1,16 +1,35 @@
 package nge.lk.stuff.dfa2exp.model;
 
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Represents a deterministic finite automaton
+ * <p>
+ * The transitions are stored in a single row-major table (states x symbols) where -1 denotes a missing transition.
+ * {@link State}s are lightweight views on this table.
  */
 public class DFA {
 
     /**
-     * The set of states
+     * The number of states
      */
-    private final State[] states;
+    private final int stateCount;
+
+    /**
+     * The number of symbols in the alphabet
+     */
+    private final int symbolCount;
+
+    /**
+     * The transition table, indexed by {@code state * symbolCount + symbol}. -1 if there is no transition
+     */
+    private final int[] transitions;
+
+    /**
+     * The set of final states
+     */
+    private final BitSet finalStates;
 
     /**
      * Creates a deterministic finite automaton with the given amount of states
@@ -19,8 +38,15 @@ public class DFA {
      * @param e the number of symbols in the alphabet
      */
     public DFA(int q, int e) {
-        states = new State[q];
-        Arrays.setAll(states, i -> new State(i, e));
+        if ((long) q * e > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Transition table too large: " + q + " states, " + e + " symbols");
+        }
+
+        stateCount = q;
+        symbolCount = e;
+        transitions = new int[q * e];
+        Arrays.fill(transitions, -1);
+        finalStates = new BitSet(q);
     }
 
     /**
@@ -29,7 +55,84 @@ public class DFA {
      * @param q the index of the state
      */
     public void makeFinal(int q) {
-        states[q].makeFinal();
+        checkState(q);
+        finalStates.set(q);
+    }
+
+    /**
+     * Marks or unmarks the state indicated by the given index as a final state
+     *
+     * @param q the index of the state
+     * @param isFinal whether the state is a final state
+     */
+    public void setFinal(int q, boolean isFinal) {
+        checkState(q);
+        finalStates.set(q, isFinal);
+    }
+
+    /**
+     * Checks whether the state indicated by the given index is a final state
+     *
+     * @param q the index of the state
+     *
+     * @return true if the state is a final state
+     */
+    public boolean isFinal(int q) {
+        checkState(q);
+        return finalStates.get(q);
+    }
+
+    /**
+     * Returns the target of the transition of the given state for the given symbol
+     *
+     * @param q the index of the state
+     * @param e the input symbol (by index)
+     *
+     * @return the index of the target state, or -1 if there is no such transition
+     */
+    public int getTransition(int q, int e) {
+        checkState(q);
+        checkSymbol(e);
+        return transitions[q * symbolCount + e];
+    }
+
+    /**
+     * Creates a transition for the given state and symbol
+     *
+     * @param q the index of the source state
+     * @param e the symbol of the transition
+     * @param target the index of the target state, or -1 for no transition
+     */
+    public void createTransition(int q, int e, int target) {
+        checkState(q);
+        checkSymbol(e);
+        checkTarget(target);
+        assert transitions[q * symbolCount + e] == -1 : "Can not override successor for symbol " + e;
+
+        transitions[q * symbolCount + e] = target;
+    }
+
+    /**
+     * Sets the transition for the given state and symbol, replacing an existing transition
+     *
+     * @param q the index of the source state
+     * @param e the symbol of the transition
+     * @param target the index of the target state, or -1 to remove the transition
+     */
+    public void setTransition(int q, int e, int target) {
+        checkState(q);
+        checkSymbol(e);
+        checkTarget(target);
+        transitions[q * symbolCount + e] = target;
+    }
+
+    /**
+     * Copies the transition table
+     *
+     * @return a copy of the transition table, indexed by {@code state * symbolCount + symbol}
+     */
+    int[] transitionTable() {
+        return transitions.clone();
     }
 
     /**
@@ -38,7 +141,7 @@ public class DFA {
      * @return the initial state of this automaton
      */
     public State createRun() {
-        return states[0];
+        return new State(this, 0);
     }
 
     /**
@@ -49,7 +152,8 @@ public class DFA {
      * @return the state
      */
     public State getState(int q) {
-        return states[q];
+        checkState(q);
+        return new State(this, q);
     }
 
     /**
@@ -57,7 +161,16 @@ public class DFA {
      * @return the number of states
      */
     public int stateCount() {
-        return states.length;
+        return stateCount;
+    }
+
+    /**
+     * Counts the number of symbols in the alphabet
+     *
+     * @return the number of symbols
+     */
+    public int symbolCount() {
+        return symbolCount;
     }
 
     /**
@@ -66,6 +179,50 @@ public class DFA {
      * @return true if the DFA is complete
      */
     public boolean isComplete() {
-        return Arrays.stream(states).allMatch(State::isComplete);
+        for (int target : transitions) {
+            if (target == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the index of a state
+     *
+     * @param q the index of the state
+     *
+     * @throws IndexOutOfBoundsException if there is no such state
+     */
+    private void checkState(int q) {
+        if (q < 0 || q >= stateCount) {
+            throw new IndexOutOfBoundsException("No such state: " + q);
+        }
+    }
+
+    /**
+     * Checks the index of a symbol
+     *
+     * @param e the index of the symbol
+     *
+     * @throws IndexOutOfBoundsException if there is no such symbol
+     */
+    private void checkSymbol(int e) {
+        if (e < 0 || e >= symbolCount) {
+            throw new IndexOutOfBoundsException("No such symbol: " + e);
+        }
+    }
+
+    /**
+     * Checks the target of a transition
+     *
+     * @param target the index of the target state, or -1 for no transition
+     *
+     * @throws IndexOutOfBoundsException if there is no such state
+     */
+    private void checkTarget(int target) {
+        if (target != -1) {
+            checkState(target);
+        }
     }
 }
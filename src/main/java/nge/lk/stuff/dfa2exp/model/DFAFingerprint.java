@@ -0,0 +1,135 @@
+package nge.lk.stuff.dfa2exp.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The canonical form of the reachable part of a deterministic finite automaton
+ * <p>
+ * The reachable states are renumbered in breadth first order from the initial state, visiting the successors of each
+ * state in symbol order. Since the automaton is deterministic this numbering is unique, so two automata have equal
+ * fingerprints if and only if their reachable parts are identical up to the numbering of the states. Fingerprints are
+ * compared exactly, the hash code only speeds up lookups.
+ */
+public final class DFAFingerprint {
+
+    /**
+     * The canonical encoding: the number of states, the number of symbols, the renumbered transition table and the
+     * final states as a bit set
+     */
+    private final int[] encoding;
+
+    /**
+     * The hash code of the encoding
+     */
+    private final int hash;
+
+    /**
+     * Creates a fingerprint from its encoding
+     *
+     * @param encoding the canonical encoding
+     */
+    private DFAFingerprint(int[] encoding) {
+        this.encoding = encoding;
+        hash = Arrays.hashCode(encoding);
+    }
+
+    /**
+     * Computes the fingerprint of an automaton. This takes linear time in the size of the transition table
+     *
+     * @param dfa the automaton
+     *
+     * @return the fingerprint of the reachable part of the automaton
+     */
+    public static DFAFingerprint of(DFA dfa) {
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        if (n == 0) {
+            return new DFAFingerprint(new int[]{0, k});
+        }
+
+        int[] newIds = new int[n];
+        Arrays.fill(newIds, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        newIds[0] = tail;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int q = queue[head++];
+            for (int e = 0; e < k; e++) {
+                int target = dfa.getTransition(q, e);
+                if (target != -1 && newIds[target] == -1) {
+                    newIds[target] = tail;
+                    queue[tail++] = target;
+                }
+            }
+        }
+
+        int reachable = tail;
+        int finalsOffset = 2 + reachable * k;
+        int[] encoding = new int[finalsOffset + (reachable + 31) / 32];
+        encoding[0] = reachable;
+        encoding[1] = k;
+        for (int i = 0; i < reachable; i++) {
+            int q = queue[i];
+            for (int e = 0; e < k; e++) {
+                int target = dfa.getTransition(q, e);
+                encoding[2 + i * k + e] = target == -1 ? -1 : newIds[target];
+            }
+            if (dfa.isFinal(q)) {
+                encoding[finalsOffset + i / 32] |= 1 << (i % 32);
+            }
+        }
+        return new DFAFingerprint(encoding);
+    }
+
+    /**
+     * @return the number of reachable states
+     */
+    public int stateCount() {
+        return encoding[0];
+    }
+
+    /**
+     * @return the number of symbols in the alphabet
+     */
+    public int symbolCount() {
+        return encoding[1];
+    }
+
+    /**
+     * @return the number of integers in the canonical encoding, which grows with the size of the transition table
+     */
+    public int encodedLength() {
+        return encoding.length;
+    }
+
+    /**
+     * Encodes this fingerprint as bytes, for example to compute a persistent digest of an automaton
+     *
+     * @return the canonical encoding, every integer in big endian byte order
+     */
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(encoding.length * 4);
+        buffer.asIntBuffer().put(encoding);
+        return buffer.array();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DFAFingerprint)) {
+            return false;
+        }
+        DFAFingerprint other = (DFAFingerprint) o;
+        return hash == other.hash && Arrays.equals(encoding, other.encoding);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
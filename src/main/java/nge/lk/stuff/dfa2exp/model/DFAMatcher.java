@@ -0,0 +1,168 @@
+package nge.lk.stuff.dfa2exp.model;
+
+import java.util.Arrays;
+
+/**
+ * Matches input directly against a deterministic finite automaton
+ * <p>
+ * Matching takes linear time in the length of the input and does not allocate. The matcher works on a snapshot of the
+ * automaton, later changes to the automaton do not affect it. Instances are immutable and can be shared between threads.
+ */
+public final class DFAMatcher {
+
+    /**
+     * The number of symbols in the alphabet
+     */
+    private final int symbolCount;
+
+    /**
+     * The transition table, indexed by {@code state * symbolCount + symbol}. -1 if there is no transition
+     */
+    private final int[] transitions;
+
+    /**
+     * Whether a state is a final state
+     */
+    private final boolean[] finalStates;
+
+    /**
+     * The symbol index of every character up to the largest character of the alphabet. -1 if the character is not part
+     * of the alphabet
+     */
+    private final int[] symbolMap;
+
+    /**
+     * Creates a matcher for the given automaton
+     *
+     * @param dfa the automaton
+     * @param alphabet the alphabet of the automaton. The character at index i is the symbol with index i
+     */
+    public DFAMatcher(DFA dfa, CharSequence alphabet) {
+        if (alphabet.length() != dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+        if (dfa.stateCount() == 0) {
+            throw new IllegalArgumentException("The automaton has no initial state");
+        }
+
+        symbolCount = dfa.symbolCount();
+        transitions = dfa.transitionTable();
+        finalStates = new boolean[dfa.stateCount()];
+        for (int q = 0; q < finalStates.length; q++) {
+            finalStates[q] = dfa.isFinal(q);
+        }
+
+        char max = 0;
+        for (int i = 0; i < alphabet.length(); i++) {
+            max = (char) Math.max(max, alphabet.charAt(i));
+        }
+        symbolMap = new int[max + 1];
+        Arrays.fill(symbolMap, -1);
+        for (int i = 0; i < alphabet.length(); i++) {
+            char c = alphabet.charAt(i);
+            if (symbolMap[c] != -1) {
+                throw new IllegalArgumentException("Duplicate symbol in alphabet: " + c);
+            }
+            symbolMap[c] = i;
+        }
+    }
+
+    /**
+     * Returns the symbol index of the given character
+     *
+     * @param c the character
+     *
+     * @return the index of the symbol, or -1 if the character is not part of the alphabet
+     */
+    public int symbolOf(char c) {
+        return c < symbolMap.length ? symbolMap[c] : -1;
+    }
+
+    /**
+     * Checks whether the automaton accepts the given input
+     *
+     * @param input the input
+     *
+     * @return true if the input is accepted
+     */
+    public boolean matches(CharSequence input) {
+        return matches(input, 0, input.length());
+    }
+
+    /**
+     * Checks whether the automaton accepts a region of the given input
+     *
+     * @param input the input
+     * @param start the first index of the region (inclusive)
+     * @param end the last index of the region (exclusive)
+     *
+     * @return true if the region is accepted
+     */
+    public boolean matches(CharSequence input, int start, int end) {
+        if (start < 0 || end > input.length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid region: " + start + ".." + end);
+        }
+
+        int q = 0;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c >= symbolMap.length) {
+                return false;
+            }
+            int e = symbolMap[c];
+            if (e == -1) {
+                return false;
+            }
+            q = transitions[q * symbolCount + e];
+            if (q == -1) {
+                return false;
+            }
+        }
+        return finalStates[q];
+    }
+
+    /**
+     * Checks whether the automaton accepts the given input. Every byte is treated as the character with the same
+     * (unsigned) value
+     *
+     * @param input the input
+     *
+     * @return true if the input is accepted
+     */
+    public boolean matches(byte[] input) {
+        return matches(input, 0, input.length);
+    }
+
+    /**
+     * Checks whether the automaton accepts a region of the given input. Every byte is treated as the character with
+     * the same (unsigned) value
+     *
+     * @param input the input
+     * @param offset the first index of the region
+     * @param length the length of the region
+     *
+     * @return true if the region is accepted
+     */
+    public boolean matches(byte[] input, int offset, int length) {
+        if (offset < 0 || length < 0 || length > input.length - offset) {
+            throw new IndexOutOfBoundsException("Invalid region: offset " + offset + ", length " + length);
+        }
+
+        int q = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int c = input[i] & 0xFF;
+            if (c >= symbolMap.length) {
+                return false;
+            }
+            int e = symbolMap[c];
+            if (e == -1) {
+                return false;
+            }
+            q = transitions[q * symbolCount + e];
+            if (q == -1) {
+                return false;
+            }
+        }
+        return finalStates[q];
+    }
+}
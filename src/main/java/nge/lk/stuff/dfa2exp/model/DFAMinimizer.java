@@ -0,0 +1,343 @@
+package nge.lk.stuff.dfa2exp.model;
+
+import java.util.Arrays;
+
+/**
+ * Minimizes deterministic finite automata using Hopcroft's partition refinement algorithm
+ * <p>
+ * Missing transitions are treated as transitions into an implicit sink state. The resulting automaton only contains
+ * states that are reachable from the initial state and from which a final state can be reached, so it might not be
+ * complete even if the source automaton was.
+ */
+public final class DFAMinimizer {
+
+    /**
+     * Creates a minimal automaton which accepts the same language as the given automaton
+     *
+     * @param source the automaton to minimize
+     *
+     * @return the minimal automaton. The initial state is state 0
+     */
+    public static DFA minimize(DFA source) {
+        int n = source.stateCount();
+        int k = source.symbolCount();
+        int sink = n;
+        int total = n + 1;
+
+        Partition partition = new Partition(source, sink);
+        partition.refine(buildInverse(source, sink));
+
+        int deadBlock = partition.blockOf[sink];
+        int startBlock = partition.blockOf[0];
+        if (startBlock == deadBlock) {
+            // The language is empty
+            return new DFA(1, k);
+        }
+
+        // Number the remaining blocks in breadth first order, starting with the block of the initial state
+        int[] newIds = new int[total];
+        Arrays.fill(newIds, -1);
+        int[] queue = new int[total];
+        int head = 0;
+        int tail = 0;
+        newIds[startBlock] = tail;
+        queue[tail++] = startBlock;
+        while (head < tail) {
+            int representative = partition.representative(queue[head++]);
+            for (int e = 0; e < k; e++) {
+                int target = source.getTransition(representative, e);
+                if (target == -1) {
+                    continue;
+                }
+                int targetBlock = partition.blockOf[target];
+                if (targetBlock != deadBlock && newIds[targetBlock] == -1) {
+                    newIds[targetBlock] = tail;
+                    queue[tail++] = targetBlock;
+                }
+            }
+        }
+
+        DFA result = new DFA(tail, k);
+        for (int i = 0; i < tail; i++) {
+            int representative = partition.representative(queue[i]);
+            if (source.isFinal(representative)) {
+                result.makeFinal(i);
+            }
+            for (int e = 0; e < k; e++) {
+                int target = source.getTransition(representative, e);
+                if (target != -1 && partition.blockOf[target] != deadBlock) {
+                    result.createTransition(i, e, newIds[partition.blockOf[target]]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the inverse transition function. The predecessors of state q for symbol e are located in
+     * {@code inverse[offsets[e * total + q] .. offsets[e * total + q + 1])} where {@code total} is the number of states
+     * including the sink
+     *
+     * @param source the automaton
+     * @param sink the index of the implicit sink state
+     *
+     * @return the offsets (index 0) and the predecessor table (index 1)
+     */
+    private static int[][] buildInverse(DFA source, int sink) {
+        int k = source.symbolCount();
+        int total = sink + 1;
+
+        int[] offsets = new int[k * total + 1];
+        for (int q = 0; q < total; q++) {
+            for (int e = 0; e < k; e++) {
+                offsets[e * total + target(source, sink, q, e) + 1]++;
+            }
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+
+        int[] inverse = new int[k * total];
+        int[] fill = offsets.clone();
+        for (int q = 0; q < total; q++) {
+            for (int e = 0; e < k; e++) {
+                inverse[fill[e * total + target(source, sink, q, e)]++] = q;
+            }
+        }
+        return new int[][]{offsets, inverse};
+    }
+
+    /**
+     * Returns the target of a transition, where missing transitions lead to the sink
+     *
+     * @param source the automaton
+     * @param sink the index of the implicit sink state
+     * @param q the source state
+     * @param e the symbol
+     *
+     * @return the target state
+     */
+    private static int target(DFA source, int sink, int q, int e) {
+        if (q == sink) {
+            return sink;
+        }
+        int target = source.getTransition(q, e);
+        return target == -1 ? sink : target;
+    }
+
+    private DFAMinimizer() {
+    }
+
+    /**
+     * A partition of the states (including the sink) into blocks of equivalent states
+     */
+    private static final class Partition {
+
+        /**
+         * The number of symbols in the alphabet
+         */
+        private final int symbolCount;
+
+        /**
+         * The states, grouped by block
+         */
+        private final int[] elements;
+
+        /**
+         * The position of every state in {@link #elements}
+         */
+        private final int[] location;
+
+        /**
+         * The block of every state
+         */
+        private final int[] blockOf;
+
+        /**
+         * The first index (inclusive) of every block in {@link #elements}
+         */
+        private final int[] blockStart;
+
+        /**
+         * The last index (exclusive) of every block in {@link #elements}
+         */
+        private final int[] blockEnd;
+
+        /**
+         * The number of marked states of every block. Marked states are moved to the front of their block
+         */
+        private final int[] marked;
+
+        /**
+         * The number of blocks
+         */
+        private int blockCount;
+
+        /**
+         * Creates the initial partition (final states, non-final states)
+         *
+         * @param source the automaton
+         * @param sink the index of the implicit sink state
+         */
+        private Partition(DFA source, int sink) {
+            int total = sink + 1;
+            symbolCount = source.symbolCount();
+            elements = new int[total];
+            location = new int[total];
+            blockOf = new int[total];
+            blockStart = new int[total];
+            blockEnd = new int[total];
+            marked = new int[total];
+
+            int finals = 0;
+            for (int q = 0; q < sink; q++) {
+                if (source.isFinal(q)) {
+                    finals++;
+                }
+            }
+
+            int nextFinal = 0;
+            int nextNonFinal = finals;
+            for (int q = 0; q < total; q++) {
+                boolean isFinal = q != sink && source.isFinal(q);
+                int position = isFinal ? nextFinal++ : nextNonFinal++;
+                elements[position] = q;
+                location[q] = position;
+                blockOf[q] = finals == 0 || isFinal ? 0 : 1;
+            }
+
+            if (finals == 0) {
+                blockCount = 1;
+                blockEnd[0] = total;
+            } else {
+                // There is at least one non-final state, the sink
+                blockCount = 2;
+                blockEnd[0] = finals;
+                blockStart[1] = finals;
+                blockEnd[1] = total;
+            }
+        }
+
+        /**
+         * Refines the partition until it is stable with respect to the transition function
+         *
+         * @param inverseFunction the inverse transition function as created by {@link #buildInverse(DFA, int)}
+         */
+        private void refine(int[][] inverseFunction) {
+            int[] offsets = inverseFunction[0];
+            int[] inverse = inverseFunction[1];
+            int total = elements.length;
+            int k = symbolCount;
+
+            // Pending splitters, encoded as block * k + symbol. Every splitter is added at most once
+            int[] worklist = new int[total * k];
+            int pending = 0;
+            if (blockCount == 2) {
+                int smaller = size(0) <= size(1) ? 0 : 1;
+                for (int e = 0; e < k; e++) {
+                    worklist[pending++] = smaller * k + e;
+                }
+            }
+
+            int[] splitter = new int[total];
+            int[] touched = new int[total];
+            while (pending > 0) {
+                int entry = worklist[--pending];
+                int block = entry / k;
+                int e = entry % k;
+
+                // Copy the splitter block first, marking reorders the elements of the blocks
+                int splitterSize = size(block);
+                System.arraycopy(elements, blockStart[block], splitter, 0, splitterSize);
+
+                // Mark all states which have a transition for e into the splitter block
+                int touchedCount = 0;
+                for (int i = 0; i < splitterSize; i++) {
+                    int q = splitter[i];
+                    for (int j = offsets[e * total + q]; j < offsets[e * total + q + 1]; j++) {
+                        int p = inverse[j];
+                        int b = blockOf[p];
+                        int boundary = blockStart[b] + marked[b];
+                        if (location[p] < boundary) {
+                            continue; // already marked
+                        }
+                        if (marked[b] == 0) {
+                            touched[touchedCount++] = b;
+                        }
+                        swap(location[p], boundary);
+                        marked[b]++;
+                    }
+                }
+
+                // Split every block which is only partially marked
+                for (int i = 0; i < touchedCount; i++) {
+                    int b = touched[i];
+                    int markedCount = marked[b];
+                    marked[b] = 0;
+                    if (markedCount == size(b)) {
+                        continue;
+                    }
+
+                    // The smaller half receives the new block number, so relabeling stays within O(n log n)
+                    int newBlock = blockCount++;
+                    int boundary = blockStart[b] + markedCount;
+                    if (markedCount <= size(b) - markedCount) {
+                        blockStart[newBlock] = blockStart[b];
+                        blockEnd[newBlock] = boundary;
+                        blockStart[b] = boundary;
+                    } else {
+                        blockStart[newBlock] = boundary;
+                        blockEnd[newBlock] = blockEnd[b];
+                        blockEnd[b] = boundary;
+                    }
+                    for (int j = blockStart[newBlock]; j < blockEnd[newBlock]; j++) {
+                        blockOf[elements[j]] = newBlock;
+                    }
+
+                    // If (b, c) is pending both halves are needed, otherwise the smaller half suffices.
+                    // In both cases only (newBlock, c) has to be added
+                    for (int c = 0; c < k; c++) {
+                        worklist[pending++] = newBlock * k + c;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns any state of the given block
+         *
+         * @param block the block
+         *
+         * @return a state of the block
+         */
+        private int representative(int block) {
+            return elements[blockStart[block]];
+        }
+
+        /**
+         * Counts the states in a block
+         *
+         * @param block the block
+         *
+         * @return the number of states in the block
+         */
+        private int size(int block) {
+            return blockEnd[block] - blockStart[block];
+        }
+
+        /**
+         * Swaps two elements
+         *
+         * @param i the position of the first element
+         * @param j the position of the second element
+         */
+        private void swap(int i, int j) {
+            int a = elements[i];
+            int b = elements[j];
+            elements[i] = b;
+            elements[j] = a;
+            location[b] = i;
+            location[a] = j;
+        }
+    }
+}
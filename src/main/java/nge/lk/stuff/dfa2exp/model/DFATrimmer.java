@@ -0,0 +1,117 @@
+package nge.lk.stuff.dfa2exp.model;
+
+import java.util.Arrays;
+
+/**
+ * Removes useless states from deterministic finite automata
+ * <p>
+ * A state is useless if it can not be reached from the initial state or if no final state can be reached from it.
+ * Removing these states does not change the accepted language, but it keeps them out of the equation system. Trimming
+ * takes linear time in the size of the transition table.
+ */
+public final class DFATrimmer {
+
+    /**
+     * Creates an automaton which accepts the same language as the given automaton, but has no useless states
+     * <p>
+     * The initial state is always kept, so the automaton of the empty language has a single, non-final state. The
+     * remaining states are numbered in breadth first order from the initial state.
+     *
+     * @param source the automaton to trim
+     *
+     * @return the trimmed automaton, or the source automaton if it does not have useless states
+     */
+    public static DFA trim(DFA source) {
+        int n = source.stateCount();
+        int k = source.symbolCount();
+        if (n == 0) {
+            return source;
+        }
+
+        // Backward search from the final states over the inverse transition function
+        int[] offsets = new int[n + 1];
+        for (int q = 0; q < n; q++) {
+            for (int e = 0; e < k; e++) {
+                int target = source.getTransition(q, e);
+                if (target != -1) {
+                    offsets[target + 1]++;
+                }
+            }
+        }
+        for (int i = 1; i <= n; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] predecessors = new int[offsets[n]];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int q = 0; q < n; q++) {
+            for (int e = 0; e < k; e++) {
+                int target = source.getTransition(q, e);
+                if (target != -1) {
+                    predecessors[fill[target]++] = q;
+                }
+            }
+        }
+
+        boolean[] productive = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int q = 0; q < n; q++) {
+            if (source.isFinal(q)) {
+                productive[q] = true;
+                queue[tail++] = q;
+            }
+        }
+        while (head < tail) {
+            int q = queue[head++];
+            for (int i = offsets[q]; i < offsets[q + 1]; i++) {
+                int p = predecessors[i];
+                if (!productive[p]) {
+                    productive[p] = true;
+                    queue[tail++] = p;
+                }
+            }
+        }
+
+        // Forward search from the initial state, only visiting productive states. The queue order is the new numbering
+        int[] newIds = new int[n];
+        Arrays.fill(newIds, -1);
+        head = 0;
+        tail = 0;
+        newIds[0] = tail;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int q = queue[head++];
+            for (int e = 0; e < k; e++) {
+                int target = source.getTransition(q, e);
+                if (target != -1 && productive[target] && newIds[target] == -1) {
+                    newIds[target] = tail;
+                    queue[tail++] = target;
+                }
+            }
+        }
+
+        if (tail == n) {
+            // Every state is kept
+            return source;
+        }
+
+        DFA result = new DFA(tail, k);
+        for (int i = 0; i < tail; i++) {
+            int q = queue[i];
+            if (source.isFinal(q)) {
+                result.makeFinal(i);
+            }
+            for (int e = 0; e < k; e++) {
+                int target = source.getTransition(q, e);
+                if (target != -1 && newIds[target] != -1) {
+                    result.createTransition(i, e, newIds[target]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private DFATrimmer() {
+    }
+}
@@ -0,0 +1,129 @@
+package nge.lk.stuff.dfa2exp.model;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+
+/**
+ * Creates automata which read numbers digit by digit (most significant digit first) and accept them depending on their
+ * remainder modulo a divisor
+ * <p>
+ * State q of the automata represents the remainder q of the digits read so far, so reading digit d leads from q to
+ * (q * base + d) mod divisor. The initial state is the remainder 0, hence the empty word is treated like the number 0.
+ * Symbol d of the automata is the digit with value d.
+ * <p>
+ * The automata have one state per remainder and a transition table of divisor * base entries, so the divisor is limited
+ * to {@code Integer.MAX_VALUE / base}. The {@code long} and {@link BigInteger} overloads accept divisors of these types
+ * for convenience, but are subject to the same limit.
+ */
+public final class DivisibilityAutomata {
+
+    /**
+     * Creates an automaton which accepts the numbers that are divisible by the given divisor
+     *
+     * @param base the base of the numbers
+     * @param divisor the divisor
+     *
+     * @return the automaton
+     *
+     * @throws IllegalArgumentException if the base is smaller than 2, or the divisor is smaller than 1 or larger than
+     * {@code Integer.MAX_VALUE / base}
+     */
+    public static DFA divisibleBy(int base, long divisor) {
+        BitSet remainders = new BitSet();
+        remainders.set(0);
+        return remainderIn(base, divisor, remainders);
+    }
+
+    /**
+     * Creates an automaton which accepts the numbers that are divisible by the given divisor
+     *
+     * @param base the base of the numbers
+     * @param divisor the divisor
+     *
+     * @return the automaton
+     *
+     * @throws IllegalArgumentException if the base is smaller than 2, or the divisor is smaller than 1 or larger than
+     * {@code Integer.MAX_VALUE / base}
+     */
+    public static DFA divisibleBy(int base, BigInteger divisor) {
+        return divisibleBy(base, toLong(divisor));
+    }
+
+    /**
+     * Creates an automaton which accepts the numbers whose remainder modulo the given divisor is in the given set
+     *
+     * @param base the base of the numbers
+     * @param divisor the divisor
+     * @param remainders the accepted remainders. Remainders which are not smaller than the divisor are ignored
+     *
+     * @return the automaton
+     *
+     * @throws IllegalArgumentException if the base is smaller than 2, or the divisor is smaller than 1 or larger than
+     * {@code Integer.MAX_VALUE / base}
+     */
+    public static DFA remainderIn(int base, BigInteger divisor, BitSet remainders) {
+        return remainderIn(base, toLong(divisor), remainders);
+    }
+
+    /**
+     * Creates an automaton which accepts the numbers whose remainder modulo the given divisor is in the given set
+     *
+     * @param base the base of the numbers
+     * @param divisor the divisor
+     * @param remainders the accepted remainders. Remainders which are not smaller than the divisor are ignored
+     *
+     * @return the automaton
+     *
+     * @throws IllegalArgumentException if the base is smaller than 2, or the divisor is smaller than 1 or larger than
+     * {@code Integer.MAX_VALUE / base}
+     */
+    public static DFA remainderIn(int base, long divisor, BitSet remainders) {
+        if (base < 2) {
+            throw new IllegalArgumentException("Invalid base: " + base);
+        }
+        if (divisor < 1) {
+            throw new IllegalArgumentException("Invalid divisor: " + divisor);
+        }
+        if (divisor > Integer.MAX_VALUE / base) {
+            throw new IllegalArgumentException("Divisor too large for base " + base + ": " + divisor);
+        }
+
+        int div = (int) divisor;
+        DFA dfa = new DFA(div, base);
+        for (int q = remainders.nextSetBit(0); q >= 0 && q < div; q = remainders.nextSetBit(q + 1)) {
+            dfa.makeFinal(q);
+        }
+
+        for (int q = 0; q < div; q++) {
+            // (q * base + d) mod div, computed incrementally for d = 0, 1, ...
+            int target = (int) ((long) q * base % div);
+            for (int d = 0; d < base; d++) {
+                dfa.createTransition(q, d, target);
+                if (++target == div) {
+                    target = 0;
+                }
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Converts a divisor to a long
+     *
+     * @param divisor the divisor
+     *
+     * @return the divisor
+     */
+    private static long toLong(BigInteger divisor) {
+        if (divisor.signum() < 1) {
+            throw new IllegalArgumentException("Invalid divisor: " + divisor);
+        }
+        if (divisor.bitLength() > 63) {
+            throw new IllegalArgumentException("Divisor too large: " + divisor);
+        }
+        return divisor.longValue();
+    }
+
+    private DivisibilityAutomata() {
+    }
+}
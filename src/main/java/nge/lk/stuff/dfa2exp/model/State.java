@@ -1,43 +1,39 @@
 package nge.lk.stuff.dfa2exp.model;
 
-import java.util.Arrays;
-import java.util.Objects;
-
 /**
  * Represents a state of a deterministic finite automaton
+ * <p>
+ * A state is a lightweight view on the transition table of its {@link DFA}. Two views are equal if they refer to the
+ * same state of the same automaton.
  */
 public class State {
 
     /**
-     * The ID of this state
-     */
-    private final int stateId;
-
-    /**
-     * The successors of this state, indexed by symbol
+     * The automaton this state belongs to
      */
-    private final State[] successors;
+    private final DFA owner;
 
     /**
-     * Whether this state is a final state
+     * The ID of this state
      */
-    private boolean finalState;
+    private final int stateId;
 
     /**
-     * Initializes this state with the given number of successors (symbols in the alphabet)
+     * Creates a view of the state with the given ID
      *
-     * @param e the number of symbols in the alphabet
+     * @param owner the automaton this state belongs to
+     * @param id the ID of the state
      */
-    public State(int id, int e) {
+    State(DFA owner, int id) {
+        this.owner = owner;
         stateId = id;
-        successors = new State[e];
     }
 
     /**
      * Marks this state as a final state
      */
     public void makeFinal() {
-        finalState = true;
+        owner.makeFinal(stateId);
     }
 
     /**
@@ -48,7 +44,7 @@ public class State {
      * @return true if a transition exists for the symbol denoted by {@code e}
      */
     public boolean hasTransition(int e) {
-        return successors[e] != null;
+        return owner.getTransition(stateId, e) != -1;
     }
 
     /**
@@ -56,10 +52,11 @@ public class State {
      *
      * @param e the input symbol (by index)
      *
-     * @return the new state
+     * @return the new state, or null if there is no transition for the symbol
      */
     public State takeTransition(int e) {
-        return successors[e];
+        int target = owner.getTransition(stateId, e);
+        return target == -1 ? null : new State(owner, target);
     }
 
     /**
@@ -69,16 +66,16 @@ public class State {
      * @param q the target state of the transition
      */
     public void createTransition(int e, State q) {
-        assert successors[e] == null : "Can not override successor for symbol " + e;
+        assert q.owner == owner : "Target state belongs to a different automaton";
 
-        successors[e] = q;
+        owner.createTransition(stateId, e, q.stateId);
     }
 
     /**
      * @return the amount of symbols in this state's transition table. Does not necessarily match the number of valid transitions
      */
     public int symbolCount() {
-        return successors.length;
+        return owner.symbolCount();
     }
 
     /**
@@ -87,7 +84,12 @@ public class State {
      * @return true if this state is complete
      */
     public boolean isComplete() {
-        return Arrays.stream(successors).allMatch(Objects::nonNull);
+        for (int i = 0; i < owner.symbolCount(); i++) {
+            if (!hasTransition(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -101,6 +103,23 @@ public class State {
      * @return whether this is a final state
      */
     public boolean isFinal() {
-        return finalState;
+        return owner.isFinal(stateId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof State)) {
+            return false;
+        }
+        State other = (State) o;
+        return owner == other.owner && stateId == other.stateId;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(owner) + stateId;
     }
 }
@@ -0,0 +1,69 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import java.util.BitSet;
+
+/**
+ * Eliminates equations by ascending product of in-degree and out-degree, i.e. by the number of terms their elimination
+ * creates. Ties are broken by descending index
+ */
+class DegreeProductOrder implements EliminationOrder {
+
+    /**
+     * Whether the ranking is recomputed before every elimination
+     */
+    private final boolean dynamic;
+
+    /**
+     * The ranking computed before solving (only used if the order is not dynamic)
+     */
+    private long[] staticRanks;
+
+    /**
+     * Creates the order
+     *
+     * @param dynamic whether the ranking is recomputed before every elimination
+     */
+    DegreeProductOrder(boolean dynamic) {
+        this.dynamic = dynamic;
+    }
+
+    @Override
+    public void prepare(Equation[] equations) {
+        if (!dynamic) {
+            BitSet all = new BitSet(equations.length);
+            all.set(1, equations.length);
+            staticRanks = rank(equations, all);
+        }
+    }
+
+    @Override
+    public int select(Equation[] equations, BitSet candidates) {
+        long[] ranks = dynamic ? rank(equations, candidates) : staticRanks;
+
+        int best = -1;
+        for (int i = candidates.previousSetBit(equations.length - 1); i >= 0; i = candidates.previousSetBit(i - 1)) {
+            if (best == -1 || ranks[i] < ranks[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the degree product of every candidate
+     *
+     * @param equations the equations, indexed by ID
+     * @param candidates the IDs of the candidates
+     *
+     * @return the degree products, indexed by ID
+     */
+    private static long[] rank(Equation[] equations, BitSet candidates) {
+        IncomingTerms incoming = new IncomingTerms(equations, candidates);
+        long[] ranks = new long[equations.length];
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            int outDegree = equations[i].termCount() - (equations[i].getPrefix(i) != null ? 1 : 0);
+            ranks[i] = (long) incoming.count(i) * outDegree;
+        }
+        return ranks;
+    }
+}
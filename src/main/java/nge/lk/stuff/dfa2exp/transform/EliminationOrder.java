@@ -0,0 +1,69 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import java.util.BitSet;
+
+/**
+ * Decides in which order the equations of an {@link EquationSystem} are eliminated
+ * <p>
+ * The order does not change the language of the solution, but it can change the size of the resulting expression by
+ * orders of magnitude. Instances may keep state between {@link #prepare(Equation[])} and the end of a solve, so an
+ * instance should not be shared between equation systems which are solved concurrently.
+ */
+public interface EliminationOrder {
+
+    /**
+     * Eliminates equations by descending index, the order in which the equation system was originally solved
+     *
+     * @return the elimination order
+     */
+    static EliminationOrder reverseIndex() {
+        return (equations, candidates) -> candidates.previousSetBit(equations.length - 1);
+    }
+
+    /**
+     * Eliminates equations by ascending product of in-degree and out-degree, ranked once before solving
+     *
+     * @return the elimination order
+     */
+    static EliminationOrder minDegreeProduct() {
+        return new DegreeProductOrder(false);
+    }
+
+    /**
+     * Eliminates equations by ascending product of in-degree and out-degree, re-ranked after every elimination
+     *
+     * @return the elimination order
+     */
+    static EliminationOrder dynamicDegreeProduct() {
+        return new DegreeProductOrder(true);
+    }
+
+    /**
+     * Eliminates the equation whose elimination adds the least weight (expression length) to the system first,
+     * re-ranked after every elimination
+     *
+     * @return the elimination order
+     */
+    static EliminationOrder minWeight() {
+        return new WeightOrder();
+    }
+
+    /**
+     * Prepares this order for solving the given equations. Called once before the first equation is selected
+     *
+     * @param equations the equations, indexed by ID
+     */
+    default void prepare(Equation[] equations) {
+    }
+
+    /**
+     * Selects the equation which is eliminated next
+     *
+     * @param equations the equations, indexed by ID. Equations which were already eliminated must not be inspected
+     * @param candidates the IDs of the equations which may be eliminated next. Never empty and never contains 0, the
+     * equation of the initial state is always eliminated last
+     *
+     * @return the ID of the selected equation
+     */
+    int select(Equation[] equations, BitSet candidates);
+}
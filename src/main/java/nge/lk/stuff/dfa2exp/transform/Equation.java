@@ -1,13 +1,14 @@
 package nge.lk.stuff.dfa2exp.transform;
 
-import nge.lk.stuff.dfa2exp.model.State;
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.transform.ast.ExpressionRenderer;
+import nge.lk.stuff.dfa2exp.transform.ast.Node;
+import nge.lk.stuff.dfa2exp.transform.ast.NodeFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.ObjIntConsumer;
 
 /**
  * Represents a regular expression equation
@@ -20,28 +21,36 @@ public class Equation {
     private final int equationId;
 
     /**
-     * The disjunctions of terms that represent this equation
+     * The disjunctions of terms that represent this equation, indexed by state variable (-1 for the term without state
+     * variable)
      */
-    private final List<Term> disjunctions;
+    private final TermMap disjunctions;
+
+    /**
+     * The factory which creates the expression nodes of this equation
+     */
+    private final NodeFactory factory;
 
     /**
      * Creates an equation from a state using its transitions
      *
-     * @param id the ID of this equation
-     * @param state the state to use
+     * @param id the ID of this equation, which is also the index of the state in the DFA
+     * @param source the DFA containing the state
      * @param alphabet the alphabet where transition symbols come from
+     * @param factory the factory which creates the expression nodes, shared by all equations of a system
      */
-    public Equation(int id, State state, CharSequence alphabet) {
+    public Equation(int id, DFA source, CharSequence alphabet, NodeFactory factory) {
         equationId = id;
-        disjunctions = new ArrayList<>();
-        for (int i = 0; i < state.symbolCount(); i++) {
-            State target = state.takeTransition(i);
-            if (target != null) {
-                disjunctions.add(new Term(alphabet.charAt(i), target.getStateId()));
+        disjunctions = new TermMap(source.symbolCount() + 1);
+        this.factory = factory;
+        for (int i = 0; i < source.symbolCount(); i++) {
+            int target = source.getTransition(id, i);
+            if (target != -1) {
+                disjunctions.add(target, factory.symbol(alphabet.charAt(i)));
             }
         }
-        if (state.isFinal()) {
-            disjunctions.add(new Term());
+        if (source.isFinal(id)) {
+            disjunctions.add(-1, factory.epsilon());
         }
 
         mergeTerms();
@@ -49,39 +58,49 @@ public class Equation {
         // Invariant: There is at most one term per state variable.
     }
 
+    /**
+     * Creates a copy of an equation
+     *
+     * @param source the equation to copy. Its terms have to be merged
+     */
+    private Equation(Equation source) {
+        equationId = source.equationId;
+        disjunctions = source.disjunctions.copy();
+        factory = source.factory;
+    }
+
+    /**
+     * Copies this equation. Modifying the copy does not modify this equation
+     *
+     * @return the copy
+     */
+    Equation copy() {
+        return new Equation(this);
+    }
+
     /**
      * Applies Arden's Lemma to this equation
      * <p>
      * Arden's Lemma states that for regular languages A, B with B being not empty the following holds:
      * X = AX + B  implies  X = A*B
+     *
+     * @return true if this equation had a self reference which was resolved
      */
-    public void applyArdensLemma() {
+    public boolean applyArdensLemma() {
         // Invariant: There is at most one term per state variable.
 
-        Term recursiveTerm = disjunctions.stream().filter(t -> t.getStateVariable() == equationId).findFirst().orElse(null);
-        if (recursiveTerm == null) {
+        Node recursivePrefix = disjunctions.remove(equationId);
+        if (recursivePrefix == null) {
             // Precondition for Arden's Lemma is not satisfied
-            return;
+            return false;
         }
 
-        // Transform the prefix into (prefix)*
-        String prefix = recursiveTerm.getPrefix();
-        if (!ExpressionOptimizer.isAtomic(prefix)) {
-            prefix = "(" + prefix + ")";
-        }
-        prefix += "*";
-
-        // Modify the other terms (distributivity) and add everything back into the disjunction list
-        Collection<Term> tmp = new LinkedList<>();
-        for (Term t : disjunctions) {
-            if (t != recursiveTerm) {
-                tmp.add(new Term(prefix + t.getPrefix(), t.getStateVariable()));
-            }
-        }
-        disjunctions.clear();
-        disjunctions.addAll(tmp);
+        // Transform the prefix into (prefix)* and modify the other terms (distributivity)
+        Node prefix = factory.star(recursivePrefix);
+        disjunctions.replaceAll(p -> factory.concat(prefix, p));
 
         // Invariant still holds: There is at most one term per state variable.
+        return true;
     }
 
     /**
@@ -91,60 +110,55 @@ public class Equation {
      * has to be restored by merging
      *
      * @param value the equation which is substituted in this equation
+     *
+     * @return true if this equation contained the state variable of the substituted equation and was modified
      */
-    public void substitute(Equation value) {
+    public boolean substitute(Equation value) {
+        return substitute(value, null);
+    }
+
+    /**
+     * Performs state variable substitution like {@link #substitute(Equation)}, taking the arrays for the terms which
+     * have to be merged from a buffer
+     *
+     * @param value the equation which is substituted in this equation
+     * @param buffer provides the arrays for the terms which have to be merged, or null to allocate them
+     *
+     * @return true if this equation contained the state variable of the substituted equation and was modified
+     */
+    boolean substitute(Equation value, MergeBuffer buffer) {
         // Invariant: There is at most one term per state variable.
 
-        Term targetTerm = disjunctions.stream().filter(t -> t.getStateVariable() == value.equationId).findFirst().orElse(null);
-        if (targetTerm == null) {
+        Node prefix = disjunctions.remove(value.equationId);
+        if (prefix == null) {
             // Nothing to substitute in this equation.
-            return;
-        }
-
-        // This is already in parenthesis (if needed for the expression)
-        String prefix = targetTerm.getPrefix();
-
-        // Add untouched terms
-        Collection<Term> tmp = new LinkedList<>();
-        for (Term t : disjunctions) {
-            if (t != targetTerm) {
-                tmp.add(t);
-            }
+            return false;
         }
 
         // Add substitutions
-        for (Term t : value.disjunctions) {
-            tmp.add(new Term(prefix + t.getPrefix(), t.getStateVariable()));
-        }
-        disjunctions.clear();
-        disjunctions.addAll(tmp);
+        value.disjunctions.forEach((p, variable) -> disjunctions.add(variable, factory.concat(prefix, p), buffer));
 
         // Invariant is VIOLATED: There might be more than one term for some state variables.
+        return true;
     }
 
     /**
      * Merges terms with the same state variable and restores the invariant
      */
     public void mergeTerms() {
+        mergeTerms(null);
+    }
+
+    /**
+     * Merges terms with the same state variable and restores the invariant, returning the arrays of the merged terms
+     * to a buffer
+     *
+     * @param buffer receives the arrays of the merged terms, or null
+     */
+    void mergeTerms(MergeBuffer buffer) {
         // Invariant is VIOLATED: There might be more than one term for some state variables.
 
-        Collection<Term> tmp = new LinkedList<>();
-        Set<Integer> variables = disjunctions.stream().map(Term::getStateVariable).collect(Collectors.toSet());
-        for (int variable : variables) {
-            Set<String> prefixes = disjunctions.stream().filter(t -> t.getStateVariable() == variable).map(Term::getPrefix).collect(Collectors.toSet());
-
-            String combination;
-            if (prefixes.size() == 1) {
-                combination = prefixes.stream().findAny().get();
-            } else if (prefixes.stream().allMatch(p -> p.length() == 1)) {
-                combination = "[" + String.join("", prefixes) + "]";
-            } else {
-                combination = "(" + String.join("|", prefixes) + ")";
-            }
-            tmp.add(new Term(combination, variable));
-        }
-        disjunctions.clear();
-        disjunctions.addAll(tmp);
+        disjunctions.merge(factory, buffer);
 
         // Invariant restored: There is at most one term per state variable.
     }
@@ -155,15 +169,85 @@ public class Equation {
      * @return the regular expression
      */
     public String toExpression() {
-        boolean free = disjunctions.size() == 1 && disjunctions.get(0).getStateVariable() == -1;
+        return solution().toString();
+    }
+
+    /**
+     * Writes the regular expression of this equation to the given output without creating it as a string
+     *
+     * @param out the output
+     *
+     * @throws IOException if writing to the output fails
+     */
+    public void writeExpression(Appendable out) throws IOException {
+        ExpressionRenderer.render(solution(), out);
+    }
+
+    /**
+     * Returns the expression tree of this equation if it has no variables left
+     *
+     * @return the expression tree
+     */
+    Node solution() {
+        if (disjunctions.size() == 0) {
+            // The equation has no terms, so the language is empty
+            return factory.empty();
+        }
+
+        boolean free = disjunctions.size() == 1 && disjunctions.get(-1) != null;
         assert free : "Variables left in result";
 
-        return disjunctions.get(0).getPrefix();
+        return disjunctions.get(-1);
+    }
+
+    /**
+     * @return the factory which creates the expression nodes of this equation
+     */
+    NodeFactory getFactory() {
+        return factory;
     }
 
     @Override
     public String toString() {
-        return String.format("EQ %d: %s", equationId, String.join("\n  ", disjunctions.stream().map(t -> String.format("[%d] %s", t.getStateVariable(), t.getPrefix())).collect(Collectors.toList())));
+        List<String> terms = new ArrayList<>();
+        disjunctions.forEach((prefix, variable) -> terms.add(String.format("[%d] %s", variable, prefix)));
+        return String.format("EQ %d: %s", equationId, String.join("\n  ", terms));
+    }
+
+    /**
+     * Returns the prefix of the term with the given state variable
+     *
+     * @param variable the state variable, or -1 for the term without state variable
+     *
+     * @return the prefix, or null if there is no such term
+     */
+    public Node getPrefix(int variable) {
+        return disjunctions.get(variable);
+    }
+
+    /**
+     * Performs the given action for every term of this equation
+     *
+     * @param action the action, receiving the prefix and the state variable (-1 if there is none) of each term
+     */
+    public void forEachTerm(ObjIntConsumer<Node> action) {
+        disjunctions.forEach(action);
+    }
+
+    /**
+     * @return the sum of the lengths of the prefixes of all terms
+     */
+    public long weight() {
+        long[] weight = new long[1];
+        disjunctions.forEach((prefix, variable) -> weight[0] += prefix.length());
+        return weight[0];
+    }
+
+    /**
+     * @return the number of terms in this equation
+     */
+    public int termCount() {
+        return disjunctions.size();
     }
 
     /**
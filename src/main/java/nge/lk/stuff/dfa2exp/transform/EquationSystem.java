@@ -1,8 +1,19 @@
 package nge.lk.stuff.dfa2exp.transform;
 
 import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DFAMinimizer;
+import nge.lk.stuff.dfa2exp.model.DFATrimmer;
+import nge.lk.stuff.dfa2exp.transform.ast.NodeFactory;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 
 /**
  * Represents a system of equations of regular expressions
@@ -14,19 +25,86 @@ public class EquationSystem {
      */
     private final Equation[] equations;
 
+    /**
+     * The order in which equations are eliminated
+     */
+    private EliminationOrder eliminationOrder = EliminationOrder.reverseIndex();
+
+    /**
+     * The number of threads which perform the substitutions of an elimination round. 1 solves sequentially
+     */
+    private int parallelism = 1;
+
+    /**
+     * The listener which receives metrics while solving
+     */
+    private SolverListener listener = SolverListener.NONE;
+
+    /**
+     * Creates an equation system from the given DFA using the given alphabet
+     *
+     * @param source the DFA
+     * @param alphabet the alphabet to use for transforming the DFA into a system of equations. The character at index i
+     *                 represents symbol i, see {@link nge.lk.stuff.dfa2exp.model.Alphabet} for large alphabets
+     */
+    public EquationSystem(DFA source, CharSequence alphabet) {
+        this(source, alphabet, false);
+    }
+
     /**
      * Creates an equation system from the given DFA using the given alphabet
+     * <p>
+     * Characters of the alphabet which have a special meaning in regular expressions are escaped in the solution.
+     * Transitions for adjacent characters with the same target are combined into character ranges like [0-9]. States
+     * which are unreachable or can not reach a final state are removed before the equations are created.
      *
      * @param source the DFA
-     * @param alphabet the alphabet to use for transforming the DFA into a system of equations
+     * @param alphabet the alphabet to use for transforming the DFA into a system of equations. The character at index i
+     *                 represents symbol i, see {@link nge.lk.stuff.dfa2exp.model.Alphabet} for large alphabets. Additional
+     *                 characters are ignored
+     * @param minimize whether the DFA should be minimized before it is transformed into a system of equations
      */
-    public EquationSystem(DFA source, String alphabet) {
-        if (alphabet.chars().anyMatch(i -> "()[]|*+?.^${}".contains(String.valueOf((char) i)))) {
-            throw new IllegalArgumentException("Alphabet may not contain reserved characters");
+    public EquationSystem(DFA source, CharSequence alphabet, boolean minimize) {
+        if (alphabet.length() < source.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + source.symbolCount());
         }
 
-        equations = new Equation[source.stateCount()];
-        Arrays.setAll(equations, i -> new Equation(i, source.getState(i), alphabet));
+        // Minimization removes useless states as well
+        DFA dfa = minimize ? DFAMinimizer.minimize(source) : DFATrimmer.trim(source);
+        NodeFactory factory = new NodeFactory();
+        equations = new Equation[dfa.stateCount()];
+        Arrays.setAll(equations, i -> new Equation(i, dfa, alphabet, factory));
+    }
+
+    /**
+     * Sets the order in which equations are eliminated while solving. Defaults to {@link EliminationOrder#reverseIndex()}
+     *
+     * @param order the elimination order
+     */
+    public void setEliminationOrder(EliminationOrder order) {
+        eliminationOrder = order;
+    }
+
+    /**
+     * Sets the number of threads which perform the substitutions of each elimination round. The substitutions into
+     * different equations are independent, so they can run in parallel. Defaults to 1 (sequential solving)
+     *
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the listener which receives metrics while solving. Defaults to {@link SolverListener#NONE}
+     *
+     * @param listener the listener
+     */
+    public void setListener(SolverListener listener) {
+        this.listener = listener;
     }
 
     /**
@@ -35,50 +113,287 @@ public class EquationSystem {
      * @return the solution of this equation system as a regular expression
      */
     public String solve() {
-        for (int eliminate = equations.length - 1; eliminate >= 0; eliminate--) {
-            applyArdensLemma(eliminate);
-            performSubstitution(equations[eliminate]);
-            mergeTerms(eliminate);
+        return solve(new SolveOptions());
+    }
+
+    /**
+     * Solves this equation system (assuming the initial state is 0) within the given limits
+     *
+     * @param options the limits
+     *
+     * @return the solution of this equation system as a regular expression
+     *
+     * @throws SolveLimitExceededException if a limit is exceeded
+     */
+    public String solve(SolveOptions options) {
+        return solveEquation(options, () -> false, remaining -> {
+        }).toExpression();
+    }
+
+    /**
+     * Solves this equation system (assuming the initial state is 0) and writes the solution to the given output
+     *
+     * @param out the output
+     *
+     * @throws IOException if writing to the output fails
+     * @see #solve(SolveOptions, Appendable)
+     */
+    public void solve(Appendable out) throws IOException {
+        solve(new SolveOptions(), out);
+    }
+
+    /**
+     * Solves this equation system (assuming the initial state is 0) within the given limits and writes the solution to
+     * the given output
+     * <p>
+     * The solution is written while it is rendered from the internal representation, so it is never created as a
+     * string and can be longer than a string. Use {@link java.nio.channels.Channels#newWriter} to write to a channel.
+     *
+     * @param options the limits
+     * @param out the output
+     *
+     * @throws IOException if writing to the output fails
+     * @throws SolveLimitExceededException if a limit is exceeded
+     */
+    public void solve(SolveOptions options, Appendable out) throws IOException {
+        solveEquation(options, () -> false, remaining -> {
+        }).writeExpression(out);
+    }
+
+    /**
+     * Solves this equation system (assuming the initial state is 0) within the given limits
+     *
+     * @param options the limits
+     *
+     * @return the equation of the initial state, which has no variables left
+     *
+     * @throws SolveLimitExceededException if a limit is exceeded
+     */
+    Equation solveEquation(SolveOptions options) {
+        return solveEquation(options, () -> false, remaining -> {
+        });
+    }
+
+    /**
+     * Solves this equation system (assuming the initial state is 0) asynchronously
+     *
+     * @param executor the executor which runs the solver
+     *
+     * @return the future solution. Cancelling the future stops the solver after the current elimination round
+     *
+     * @see #solveAsync(Executor, SolveOptions, IntConsumer)
+     */
+    public CompletableFuture<String> solveAsync(Executor executor) {
+        return solveAsync(executor, new SolveOptions(), remaining -> {
+        });
+    }
+
+    /**
+     * Solves this equation system (assuming the initial state is 0) asynchronously within the given limits
+     * <p>
+     * The solver checks between elimination rounds whether the future was completed by someone else (e.g. cancelled or
+     * timed out) or the solving thread was interrupted, and stops in that case. An interrupted solver completes the
+     * future with a {@link CancellationException}.
+     *
+     * @param executor the executor which runs the solver
+     * @param options the limits. Exceeding a limit completes the future with a {@link SolveLimitExceededException}
+     * @param progress receives the number of equations which still have to be eliminated after every elimination
+     *                 round, on the solving thread
+     *
+     * @return the future solution
+     */
+    public CompletableFuture<String> solveAsync(Executor executor, SolveOptions options, IntConsumer progress) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(solveEquation(options, () -> future.isDone() || Thread.currentThread().isInterrupted(), progress).toExpression());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Solves this equation system (assuming the initial state is 0)
+     *
+     * @param options the limits
+     * @param abandoned checked between elimination rounds, returns true if the result is no longer needed
+     * @param progress receives the number of equations which still have to be eliminated after every elimination round
+     *
+     * @return the equation of the initial state, which has no variables left
+     *
+     * @throws SolveLimitExceededException if a limit is exceeded
+     * @throws CancellationException if the result is no longer needed
+     */
+    private Equation solveEquation(SolveOptions options, BooleanSupplier abandoned, IntConsumer progress) {
+        long start = System.nanoTime();
+        listener.solveStarted(equations.length);
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            eliminate(pool, options, start, abandoned, progress);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
 
-        // To create the final result, merge the last equation
+        // To create the final result, resolve the self reference of the last equation and merge it
+        if (equations[0].applyArdensLemma()) {
+            listener.ardenApplied(0, equations[0].termCount());
+        }
         equations[0].mergeTerms();
 
-        return equations[0].toExpression();
+        // The solution is rendered from shared subtrees, so check its length before creating it
+        long length = equations[0].weight();
+        if (length > options.getMaxExpressionLength()) {
+            throw new SolveLimitExceededException(SolveLimitExceededException.Limit.EXPRESSION_LENGTH,
+                    new SolveStatistics(equations.length - 1, 1, length, length, System.nanoTime() - start));
+        }
+        listener.solveCompleted(length, System.nanoTime() - start);
+        return equations[0];
     }
 
     /**
-     * Applies Arden's lemma to all equations that are still relevant
+     * Eliminates all equations except the equation of the initial state
+     *
+     * @param pool the pool which performs the substitutions in parallel, or null to substitute sequentially
+     * @param options the limits
+     * @param start the start time of solving, as given by {@link System#nanoTime()}
+     * @param abandoned checked between elimination rounds, returns true if the result is no longer needed
+     * @param progress receives the number of equations which still have to be eliminated after every elimination round
+     */
+    private void eliminate(ForkJoinPool pool, SolveOptions options, long start, BooleanSupplier abandoned, IntConsumer progress) {
+        // The equation of the initial state is eliminated last
+        BitSet candidates = new BitSet(equations.length);
+        candidates.set(1, equations.length);
+
+        eliminationOrder.prepare(equations);
+        // Sequential substitutions reuse the same scratch arrays for the whole solve
+        MergeBuffer buffer = new MergeBuffer();
+        // Measuring a round scans the eliminated equation, which is skipped if nobody listens
+        boolean observed = listener != SolverListener.NONE;
+        while (!candidates.isEmpty()) {
+            long roundStart = observed ? System.nanoTime() : 0;
+            int eliminate = eliminationOrder.select(equations, candidates);
+            assert candidates.get(eliminate) : "Elimination order selected an invalid equation";
+            candidates.clear(eliminate);
+
+            // Arden's Lemma removes the self reference, so the equation can be substituted
+            Equation value = equations[eliminate];
+            if (value.applyArdensLemma()) {
+                listener.ardenApplied(eliminate, value.termCount());
+            }
+            if (pool != null && candidates.cardinality() >= SubstitutionTask.THRESHOLD) {
+                pool.invoke(new SubstitutionTask(equations, targets(candidates), value, listener));
+            } else {
+                performSubstitution(value, candidates, buffer);
+            }
+            if (observed) {
+                listener.roundCompleted(eliminate, candidates.cardinality(), value.weight(), System.nanoTime() - roundStart);
+            }
+
+            checkLimits(options, candidates, start);
+            if (abandoned.getAsBoolean()) {
+                throw new CancellationException("Solving was cancelled with " + candidates.cardinality() + " equations remaining");
+            }
+            progress.accept(candidates.cardinality());
+        }
+    }
+
+    /**
+     * Checks the limits after an elimination round
+     *
+     * @param options the limits
+     * @param candidates the IDs of the remaining equations, excluding the equation of the initial state
+     * @param start the start time of solving, as given by {@link System#nanoTime()}
+     *
+     * @throws SolveLimitExceededException if a limit is exceeded
+     */
+    private void checkLimits(SolveOptions options, BitSet candidates, long start) {
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > options.getTimeLimit()) {
+            throw new SolveLimitExceededException(SolveLimitExceededException.Limit.TIME, statistics(candidates, elapsed));
+        }
+        if (!options.limitsLength()) {
+            return;
+        }
+
+        SolveStatistics statistics = statistics(candidates, elapsed);
+        if (statistics.getMaxExpressionLength() > options.getMaxExpressionLength()) {
+            throw new SolveLimitExceededException(SolveLimitExceededException.Limit.EXPRESSION_LENGTH, statistics);
+        }
+        if (statistics.getTotalWeight() > options.getMaxTotalWeight()) {
+            throw new SolveLimitExceededException(SolveLimitExceededException.Limit.TOTAL_WEIGHT, statistics);
+        }
+    }
+
+    /**
+     * Measures the remaining equations
+     *
+     * @param candidates the IDs of the remaining equations, excluding the equation of the initial state
+     * @param elapsed the time spent solving in nanoseconds
+     *
+     * @return the statistics
+     */
+    private SolveStatistics statistics(BitSet candidates, long elapsed) {
+        long maxLength = equations[0].weight();
+        long totalWeight = maxLength;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            long weight = equations[i].weight();
+            maxLength = Math.max(maxLength, weight);
+            totalWeight += weight;
+        }
+        int remaining = candidates.cardinality() + 1;
+        return new SolveStatistics(equations.length - remaining, remaining, maxLength, totalWeight, elapsed);
+    }
+
+    /**
+     * Collects the IDs of the equations which are still relevant
+     *
+     * @param candidates the IDs of the remaining equations, excluding the equation of the initial state
      *
-     * @param upperLimit the upper limit for relevance (inclusive)
+     * @return the IDs of all remaining equations
      */
-    private void applyArdensLemma(int upperLimit) {
-        // Arden's Lemma needs to be applied to the equation currently being eliminated as well
-        for (int i = 0; i <= upperLimit; i++) {
-            equations[i].applyArdensLemma();
+    private static int[] targets(BitSet candidates) {
+        int[] targets = new int[candidates.cardinality() + 1];
+        int count = 1; // targets[0] is the equation of the initial state
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            targets[count++] = i;
         }
+        return targets;
     }
 
     /**
-     * Performs state variable substitution for all equations that are still relevant
+     * Performs state variable substitution for all equations that are still relevant and merges the terms of the
+     * modified equations
      *
      * @param value the equation which should be substituted in all relevant equations
+     * @param candidates the IDs of the remaining equations, excluding the equation of the initial state
+     * @param buffer the scratch arrays for the terms which have to be merged
      */
-    private void performSubstitution(Equation value) {
-        // Invariant: No equation ">= variable" is relevant for substitution
-        for (int i = 0; i < value.getEquationId(); i++) {
-            equations[i].substitute(value);
+    private void performSubstitution(Equation value, BitSet candidates, MergeBuffer buffer) {
+        substitute(equations[0], value, listener, buffer);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            substitute(equations[i], value, listener, buffer);
         }
     }
 
     /**
-     * Merges terms in equations that are still relevant
+     * Substitutes an equation in another one and restores the invariant of the modified equation
      *
-     * @param upperLimit the upper limit for relevance (exclusive)
+     * @param target the equation which is modified
+     * @param value the equation which is substituted
+     * @param listener the listener which receives the substitution event
+     * @param buffer the scratch arrays for the terms which have to be merged, owned by the calling thread
      */
-    private void mergeTerms(int upperLimit) {
-        for (int i = 0; i < upperLimit; i++) {
-            equations[i].mergeTerms();
+    static void substitute(Equation target, Equation value, SolverListener listener, MergeBuffer buffer) {
+        if (target.substitute(value, buffer)) {
+            target.mergeTerms(buffer);
+            listener.substituted(target.getEquationId(), value.getEquationId(), target.termCount());
         }
     }
 }
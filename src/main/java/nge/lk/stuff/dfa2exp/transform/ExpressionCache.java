@@ -0,0 +1,240 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DFAFingerprint;
+import nge.lk.stuff.dfa2exp.model.DFATrimmer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * A bounded, thread-safe cache for the results of converting automata to regular expressions
+ * <p>
+ * Results are keyed by the {@link DFAFingerprint} of the trimmed automaton and the characters of the alphabet, so
+ * automata which only differ in the numbering of their states or in useless states share an entry. The pipeline which
+ * computes the results is not part of the key, so a cache must only be used with a single pipeline configuration.
+ * <p>
+ * The weight of an entry is measured in chars: the length of the expression and the alphabet plus two for every integer
+ * of the fingerprint, which every key keeps. When the total weight exceeds the maximum, the least recently used entries
+ * are evicted. Results which are heavier than the maximum are not cached.
+ * Concurrent requests for the same key wait for a single computation instead of repeating it.
+ */
+public class ExpressionCache {
+
+    /**
+     * The maximum total weight of all entries
+     */
+    private final long maxWeight;
+
+    /**
+     * The cached expressions in access order
+     */
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The computations which are currently running
+     */
+    private final Map<Key, CompletableFuture<String>> pending = new HashMap<>();
+
+    /**
+     * The total weight of all entries
+     */
+    private long weight;
+
+    /**
+     * The number of requests which were answered from the cache or by the computation of another request
+     */
+    private long hits;
+
+    /**
+     * The number of requests which started a computation
+     */
+    private long misses;
+
+    /**
+     * Creates an empty cache
+     *
+     * @param maxWeight the maximum total weight of the cached entries, in chars
+     */
+    public ExpressionCache(long maxWeight) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the expression for the given automaton, computing it with the given pipeline if it is not cached yet
+     *
+     * @param dfa the automaton
+     * @param alphabet the alphabet of the automaton. Only the first {@link DFA#symbolCount()} characters are relevant
+     * @param pipeline the conversion of an automaton with an alphabet into an expression. It is called with the given
+     *                 arguments and must always produce the same result for equal keys
+     *
+     * @return the expression
+     */
+    public String get(DFA dfa, CharSequence alphabet, BiFunction<? super DFA, ? super CharSequence, String> pipeline) {
+        if (alphabet.length() < dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+
+        Key key = new Key(DFAFingerprint.of(DFATrimmer.trim(dfa)), alphabet.subSequence(0, dfa.symbolCount()).toString());
+        CompletableFuture<String> computation;
+        synchronized (this) {
+            String cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            computation = pending.get(key);
+            if (computation == null) {
+                misses++;
+                pending.put(key, new CompletableFuture<>());
+            } else {
+                hits++;
+            }
+        }
+
+        if (computation != null) {
+            // Another thread computes the result
+            try {
+                return computation.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        String result;
+        try {
+            result = pipeline.apply(dfa, alphabet);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                pending.remove(key).completeExceptionally(e);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            store(key, result);
+            pending.remove(key).complete(result);
+        }
+        return result;
+    }
+
+    /**
+     * Stores an entry and evicts the least recently used entries until the total weight is within the maximum
+     *
+     * @param key the key
+     * @param expression the expression
+     */
+    private void store(Key key, String expression) {
+        long entryWeight = key.weight() + expression.length();
+        if (entryWeight > maxWeight) {
+            return;
+        }
+
+        entries.put(key, expression);
+        weight += entryWeight;
+        Iterator<Map.Entry<Key, String>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight) {
+            Map.Entry<Key, String> eldest = iterator.next();
+            weight -= eldest.getKey().weight() + eldest.getValue().length();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return the number of cached expressions
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total weight of the cached entries
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * @return the number of requests which were answered without a computation of their own
+     */
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    /**
+     * @return the number of requests which computed their result
+     */
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * The key of a cache entry
+     */
+    private static final class Key {
+
+        /**
+         * The fingerprint of the trimmed automaton
+         */
+        private final DFAFingerprint fingerprint;
+
+        /**
+         * The characters which represent the symbols of the automaton
+         */
+        private final String alphabet;
+
+        /**
+         * Creates a key
+         *
+         * @param fingerprint the fingerprint of the trimmed automaton
+         * @param alphabet the characters which represent the symbols of the automaton
+         */
+        private Key(DFAFingerprint fingerprint, String alphabet) {
+            this.fingerprint = fingerprint;
+            this.alphabet = alphabet;
+        }
+
+        /**
+         * @return the weight the key adds to its entry
+         */
+        private long weight() {
+            // An int takes as much memory as two chars
+            return alphabet.length() + 2L * fingerprint.encodedLength();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return fingerprint.equals(other.fingerprint) && alphabet.equals(other.alphabet);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fingerprint.hashCode() + alphabet.hashCode();
+        }
+    }
+}
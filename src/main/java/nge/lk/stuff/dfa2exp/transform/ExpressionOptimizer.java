@@ -2,17 +2,16 @@ package nge.lk.stuff.dfa2exp.transform;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Optimizes regular expressions created by solving {@link EquationSystem}s
  *
  * The optimizer does only work for syntactically correct expressions with some other restrictions.
- * Those restrictions are respected by the equation system solver
+ * Those restrictions are respected by the equation system solver as long as the alphabet does not contain characters
+ * which have to be escaped. {@link ExpressionTreeOptimizer} does not have this restriction
  */
 public class ExpressionOptimizer {
 
@@ -31,6 +30,22 @@ public class ExpressionOptimizer {
      */
     private boolean isDisjunction;
 
+    /**
+     * The nesting depth of this optimizer, 0 for the optimizer of the whole expression
+     */
+    private final int depth;
+
+    /**
+     * The metrics of the whole optimization, shared with all subproblems: the maximum depth and the number of rewritten
+     * subexpressions
+     */
+    private final int[] metrics;
+
+    /**
+     * The listener which receives the metrics of the optimization
+     */
+    private SolverListener listener = SolverListener.NONE;
+
     /**
      * Checks whether the given regular expression R is atomic, i.e. if (R)Q is equivalent to RQ for a quantifier Q
      *
@@ -87,6 +102,32 @@ public class ExpressionOptimizer {
     public ExpressionOptimizer(String expr) {
         expression = expr;
         terms = new ArrayList<>();
+        depth = 0;
+        metrics = new int[2];
+    }
+
+    /**
+     * Create an optimizer for a subexpression
+     *
+     * @param expr the subexpression
+     * @param parent the optimizer of the enclosing expression
+     */
+    private ExpressionOptimizer(String expr, ExpressionOptimizer parent) {
+        expression = expr;
+        terms = new ArrayList<>();
+        depth = parent.depth + 1;
+        metrics = parent.metrics;
+        metrics[0] = Math.max(metrics[0], depth);
+        listener = parent.listener;
+    }
+
+    /**
+     * Sets the listener which receives the metrics of the optimization. Defaults to {@link SolverListener#NONE}
+     *
+     * @param listener the listener
+     */
+    public void setListener(SolverListener listener) {
+        this.listener = listener;
     }
 
     /**
@@ -95,6 +136,10 @@ public class ExpressionOptimizer {
      * @return the optimized expression
      */
     public String optimize() {
+        // The metrics are only collected if somebody listens
+        boolean observed = listener != SolverListener.NONE;
+        long start = observed && depth == 0 ? System.nanoTime() : 0;
+
         // The expression is first classified as a disjunction (contains top-level |) or a concatenation (otherwise)
         classify();
 
@@ -108,7 +153,14 @@ public class ExpressionOptimizer {
         optimizeExpression();
 
         // Recombines the terms into an expression
-        return recombine();
+        String result = recombine();
+        if (observed && !result.equals(expression)) {
+            metrics[1]++;
+        }
+        if (observed && depth == 0) {
+            listener.optimizationCompleted(expression.length(), result.length(), metrics[0], metrics[1], System.nanoTime() - start);
+        }
+        return result;
     }
 
     /**
@@ -307,7 +359,12 @@ public class ExpressionOptimizer {
      * Extracts a common prefix and suffix from the terms (only for disjunctions)
      */
     private void extractPrefixAndSuffix() {
-        String minimal = terms.stream().filter(t -> t.length() == terms.stream().mapToInt(String::length).min().getAsInt()).findAny().get();
+        String minimal = terms.get(0);
+        for (String term : terms) {
+            if (term.length() < minimal.length()) {
+                minimal = term;
+            }
+        }
         int prefixLength = findPrefixLength(minimal);
         int suffixLength = findSuffixLength(minimal, prefixLength);
         assert prefixLength + suffixLength <= minimal.length() : "Prefix and suffix intersect";
@@ -321,7 +378,7 @@ public class ExpressionOptimizer {
         String suffix = minimal.substring(minimal.length() - suffixLength);
 
         // Extract the centers (parts without prefix/suffix) from the terms
-        List<String> centers = new LinkedList<>();
+        List<String> centers = new ArrayList<>(terms.size());
         boolean centersContainEmptyString = false;
         for (String term : terms) {
             if (term.length() == prefixLength + suffixLength) {
@@ -368,12 +425,13 @@ public class ExpressionOptimizer {
      * Optimize the individual terms of this expression
      */
     private void optimizeTerms() {
-        Collection<String> optimizedTerms = new LinkedList<>();
-        for (String term : terms) {
+        // Every term is optimized independently, so the terms are replaced in place
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
             if (isDisjunction) {
                 // Disjunction terms are non-trivial, so another optimizer is started for the whole term.
-                ExpressionOptimizer subProblem = new ExpressionOptimizer(term);
-                optimizedTerms.add(subProblem.optimize());
+                ExpressionOptimizer subProblem = new ExpressionOptimizer(term, this);
+                terms.set(i, subProblem.optimize());
             } else {
                 // Concatenation terms are atomic or quantified atomic. They can receive more sophisticated optimizations on the fly.
                 if (term.startsWith("(")) {
@@ -384,7 +442,7 @@ public class ExpressionOptimizer {
                     int end = term.length() - (quantifier != 0 ? 2 : 1);
 
                     // Create a new subproblem for the contents of the group and optimize it
-                    ExpressionOptimizer subProblem = new ExpressionOptimizer(term.substring(1, end));
+                    ExpressionOptimizer subProblem = new ExpressionOptimizer(term.substring(1, end), this);
                     String optimized = subProblem.optimize();
 
                     if (!isAtomic(optimized)) {
@@ -397,16 +455,12 @@ public class ExpressionOptimizer {
                         // Atomic, with quantifier. Just append the quantifier to the atomic term.
                         optimized += quantifier;
                     } // otherwise, optimized is atomic with no quantifier and needs no modification
-                    optimizedTerms.add(optimized);
-                } else {
-                    // The term is either a (quantified) group or a (quantified) character
-                    // This is the base case for children recursion. Every regular expression can be broken down into these (ignoring combination syntax like |() etc.)
-                    optimizedTerms.add(term);
+                    terms.set(i, optimized);
                 }
+                // Otherwise the term is either a (quantified) group or a (quantified) character and stays as it is
+                // This is the base case for children recursion. Every regular expression can be broken down into these (ignoring combination syntax like |() etc.)
             }
         }
-        terms.clear();
-        terms.addAll(optimizedTerms);
     }
 
     /**
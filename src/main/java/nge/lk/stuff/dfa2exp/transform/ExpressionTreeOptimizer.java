@@ -0,0 +1,590 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import nge.lk.stuff.dfa2exp.transform.ast.CharClass;
+import nge.lk.stuff.dfa2exp.transform.ast.Concat;
+import nge.lk.stuff.dfa2exp.transform.ast.Epsilon;
+import nge.lk.stuff.dfa2exp.transform.ast.ExpressionParser;
+import nge.lk.stuff.dfa2exp.transform.ast.ExpressionRenderer;
+import nge.lk.stuff.dfa2exp.transform.ast.Node;
+import nge.lk.stuff.dfa2exp.transform.ast.NodeFactory;
+import nge.lk.stuff.dfa2exp.transform.ast.Optional;
+import nge.lk.stuff.dfa2exp.transform.ast.Plus;
+import nge.lk.stuff.dfa2exp.transform.ast.Star;
+import nge.lk.stuff.dfa2exp.transform.ast.Symbol;
+import nge.lk.stuff.dfa2exp.transform.ast.Union;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optimizes regular expressions created by solving {@link EquationSystem}s on an expression tree
+ * <p>
+ * Performs the same rewrites as {@link ExpressionOptimizer}, but parses the expression only once and rewrites the tree
+ * bottom-up. The parsed tree is hash-consed, so subexpressions which occur more than once are optimized only once.
+ * The result is rendered once at the end.
+ */
+public class ExpressionTreeOptimizer {
+
+    /**
+     * The factory which creates the nodes of the tree
+     */
+    private final NodeFactory factory;
+
+    /**
+     * The expression tree which is being optimized
+     */
+    private final Node root;
+
+    /**
+     * The optimized version of every node that has been optimized so far
+     */
+    private final Map<Node, Node> optimized = new IdentityHashMap<>();
+
+    /**
+     * The listener which receives the metrics of the optimization
+     */
+    private SolverListener listener = SolverListener.NONE;
+
+    /**
+     * The maximum nesting depth of the visited nodes
+     */
+    private int maxDepth;
+
+    /**
+     * The number of nodes which were changed by the optimization
+     */
+    private int rewrites;
+
+    /**
+     * Create an optimizer for the given expression
+     *
+     * @param expr the expression
+     */
+    public ExpressionTreeOptimizer(String expr) {
+        factory = new NodeFactory();
+        root = ExpressionParser.parse(expr, factory);
+    }
+
+    /**
+     * Solves the given equation system and creates an optimizer for its solution. The solution is optimized on the
+     * tree of the equation system, so it is neither rendered nor parsed
+     *
+     * @param system the equation system
+     * @param options the limits for solving
+     *
+     * @throws SolveLimitExceededException if a limit is exceeded
+     */
+    public ExpressionTreeOptimizer(EquationSystem system, SolveOptions options) {
+        Equation solved = system.solveEquation(options);
+        factory = solved.getFactory();
+        root = solved.solution();
+    }
+
+    /**
+     * Sets the listener which receives the metrics of the optimization. Defaults to {@link SolverListener#NONE}
+     *
+     * @param listener the listener
+     */
+    public void setListener(SolverListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Optimizes the expression
+     *
+     * @return the optimized expression
+     */
+    public String optimize() {
+        long start = listener != SolverListener.NONE ? System.nanoTime() : 0;
+        String result = ExpressionRenderer.render(optimizeTree(), true);
+        if (listener != SolverListener.NONE) {
+            listener.optimizationCompleted(renderedLength(root), result.length(), maxDepth, rewrites, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * Optimizes the expression and writes the result to the given output without creating it as a string. Use
+     * {@link java.nio.channels.Channels#newWriter} to write to a channel
+     *
+     * @param out the output
+     *
+     * @throws IOException if writing to the output fails
+     */
+    public void optimize(Appendable out) throws IOException {
+        long start = listener != SolverListener.NONE ? System.nanoTime() : 0;
+        Node result = optimizeTree();
+        ExpressionRenderer.render(result, out, true);
+        // Measuring the lengths traverses both trees, which is skipped if nobody listens
+        if (listener != SolverListener.NONE) {
+            listener.optimizationCompleted(renderedLength(root), renderedLength(result), maxDepth, rewrites, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Computes the length of an expression which is rendered as the whole regular expression
+     *
+     * @param node the expression
+     *
+     * @return the length of the expression without the group of a top level union
+     */
+    private static long renderedLength(Node node) {
+        return node instanceof Union ? node.length() - 2 : node.length();
+    }
+
+    /**
+     * Optimizes the expression tree
+     *
+     * @return the root of the optimized tree
+     */
+    Node optimizeTree() {
+        // Post-order traversal without recursion. A node is pushed twice: once to schedule its children and once to
+        // optimize it after all of its children are optimized
+        // The number of expanded nodes on the stack is the depth of the current node
+        Deque<Node> stack = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        stack.push(root);
+        expanded.push(false);
+        int depth = 0;
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            boolean childrenDone = expanded.pop();
+            if (childrenDone) {
+                depth--;
+            }
+            if (optimized.containsKey(node)) {
+                continue;
+            }
+
+            if (childrenDone) {
+                Node result = rewrite(node);
+                if (result != node) {
+                    rewrites++;
+                }
+                optimized.put(node, result);
+                continue;
+            }
+
+            stack.push(node);
+            expanded.push(true);
+            maxDepth = Math.max(maxDepth, ++depth);
+            for (Node child : children(node)) {
+                if (!optimized.containsKey(child)) {
+                    stack.push(child);
+                    expanded.push(false);
+                }
+            }
+        }
+        return optimized.get(root);
+    }
+
+    /**
+     * Returns the nodes which have to be optimized before the given node. The children of a concatenation are its
+     * factors, nested concatenations are not optimized on their own
+     *
+     * @param node the node
+     *
+     * @return the children
+     */
+    private static List<Node> children(Node node) {
+        List<Node> children = new ArrayList<>();
+        if (node instanceof Concat) {
+            flatten(node, children);
+        } else if (node instanceof Union) {
+            Union union = (Union) node;
+            for (int i = 0; i < union.memberCount(); i++) {
+                children.add(union.getMember(i));
+            }
+        } else {
+            Node inner = inner(node);
+            if (inner != null) {
+                children.add(inner);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Rewrites a node whose children are already optimized
+     *
+     * @param node the node
+     *
+     * @return the optimized node
+     */
+    private Node rewrite(Node node) {
+        if (node instanceof Concat) {
+            List<Node> factors = new ArrayList<>();
+            flatten(node, factors);
+            List<Node> optimizedFactors = new ArrayList<>(factors.size());
+            for (Node factor : factors) {
+                // Optimized factors might be concatenations again
+                flatten(optimized.get(factor), optimizedFactors);
+            }
+            return ExpressionParser.sequence(reduceFactors(optimizedFactors), factory);
+        }
+        if (node instanceof Union) {
+            Union union = (Union) node;
+            List<Node> members = new ArrayList<>(union.memberCount());
+            for (int i = 0; i < union.memberCount(); i++) {
+                members.add(optimized.get(union.getMember(i)));
+            }
+            return optimizeDisjunction(members);
+        }
+        if (node instanceof Star) {
+            return factory.star(optimized.get(((Star) node).getInner()));
+        }
+        if (node instanceof Plus) {
+            return factory.plus(optimized.get(((Plus) node).getInner()));
+        }
+        if (node instanceof Optional) {
+            return factory.optional(optimized.get(((Optional) node).getInner()));
+        }
+        return node;
+    }
+
+    /**
+     * Combines quantified factors of a concatenation like R R* into R+
+     *
+     * @param factors the factors
+     *
+     * @return the reduced factors
+     */
+    private List<Node> reduceFactors(List<Node> factors) {
+        List<Node> reduced = new ArrayList<>(factors.size());
+        for (int i = 0; i < factors.size(); i++) {
+            Node factor = factors.get(i);
+            if (!reduced.isEmpty()) {
+                Node last = reduced.get(reduced.size() - 1);
+
+                // RP RQ with quantifiers P, Q
+                Node combined = combineQuantified(last, factor);
+                if (combined != null) {
+                    reduced.set(reduced.size() - 1, combined);
+                    continue;
+                }
+
+                // R R* -> R+ where R might consist of several factors
+                if (factor instanceof Star) {
+                    List<Node> repeated = flatten(((Star) factor).getInner());
+                    if (endsWith(reduced, repeated)) {
+                        reduced.subList(reduced.size() - repeated.size(), reduced.size()).clear();
+                        reduced.add(factory.plus(((Star) factor).getInner()));
+                        continue;
+                    }
+                }
+
+                // R* R -> R+ where R might consist of several factors
+                if (last instanceof Star) {
+                    List<Node> repeated = flatten(((Star) last).getInner());
+                    if (regionMatches(factors, i, repeated)) {
+                        reduced.set(reduced.size() - 1, factory.plus(((Star) last).getInner()));
+                        i += repeated.size() - 1;
+                        continue;
+                    }
+                }
+            }
+            reduced.add(factor);
+        }
+        return reduced;
+    }
+
+    /**
+     * Combines two quantified versions of the same expression
+     *
+     * @param first the first factor
+     * @param second the second factor
+     *
+     * @return the combination, or null if the factors can not be combined
+     */
+    private Node combineQuantified(Node first, Node second) {
+        Node base = base(first);
+        if (base != base(second)) {
+            return null;
+        }
+
+        char p = quantifier(first);
+        char q = quantifier(second);
+        if (p == '*' && q == '*') {
+            // R* R* -> R*
+            return first;
+        }
+        if (p == '*' && q == 0 || p == 0 && q == '*' || p == '+' && q == '*' || p == '*' && q == '+' || p == '?' && q == '+' || p == '+' && q == '?') {
+            // R* R -> R+, R R* -> R+, R+ R* -> R+, R* R+ -> R+, R? R+ -> R+, R+ R? -> R+
+            return factory.plus(base);
+        }
+        if (p == '?' && q == '*' || p == '*' && q == '?') {
+            // R? R* -> R*, R* R? -> R*
+            return factory.star(base);
+        }
+        return null;
+    }
+
+    /**
+     * Optimizes a disjunction of optimized members by extracting a common prefix and suffix
+     * <p>
+     * Example: abcd|aefd|aghd -> a(bc|ef|gh)d. Empty alternatives are expressed with quantifiers: ab|acb -> ac?b
+     *
+     * @param members the members of the disjunction
+     *
+     * @return the optimized disjunction
+     */
+    private Node optimizeDisjunction(List<Node> members) {
+        Node epsilon = factory.epsilon();
+        boolean allowsEmptyWord = members.removeIf(member -> member == epsilon);
+        if (allowsEmptyWord) {
+            // R+|e is R*, which is shorter than making the whole disjunction optional
+            for (int i = 0; i < members.size(); i++) {
+                if (members.get(i) instanceof Plus) {
+                    members.set(i, factory.star(((Plus) members.get(i)).getInner()));
+                    break;
+                }
+            }
+        }
+
+        // Symbols and character classes are merged into a single character class which is treated as one member
+        List<Node> symbols = new ArrayList<>();
+        members.removeIf(member -> (member instanceof Symbol || member instanceof CharClass) && symbols.add(member));
+        if (!symbols.isEmpty()) {
+            members.add(factory.union(symbols));
+        }
+
+        Node result;
+        if (members.size() < 2) {
+            result = members.isEmpty() ? epsilon : members.get(0);
+        } else {
+            result = extractPrefixAndSuffix(members);
+        }
+
+        if (!allowsEmptyWord || isNullable(result)) {
+            return result;
+        }
+        return factory.optional(result);
+    }
+
+    /**
+     * Extracts a common prefix and suffix from the members of a disjunction
+     *
+     * @param members the members of the disjunction (at least two, none of them is the empty word)
+     *
+     * @return the disjunction with extracted prefix and suffix
+     */
+    private Node extractPrefixAndSuffix(List<Node> members) {
+        List<List<Node>> sequences = new ArrayList<>(members.size());
+        int minimalLength = Integer.MAX_VALUE;
+        for (Node member : members) {
+            List<Node> sequence = flatten(member);
+            sequences.add(sequence);
+            minimalLength = Math.min(minimalLength, sequence.size());
+        }
+
+        List<Node> first = sequences.get(0);
+        int prefixLength = 0;
+        while (prefixLength < minimalLength && allMatch(sequences, prefixLength, first.get(prefixLength), false)) {
+            prefixLength++;
+        }
+        int suffixLength = 0;
+        while (prefixLength + suffixLength < minimalLength && allMatch(sequences, suffixLength, first.get(first.size() - 1 - suffixLength), true)) {
+            suffixLength++;
+        }
+
+        if (prefixLength == 0 && suffixLength == 0) {
+            return factory.union(members);
+        }
+
+        List<Node> centers = new ArrayList<>(sequences.size());
+        for (List<Node> sequence : sequences) {
+            centers.add(ExpressionParser.sequence(sequence.subList(prefixLength, sequence.size() - suffixLength), factory));
+        }
+
+        List<Node> factors = new ArrayList<>(first.subList(0, prefixLength));
+        flatten(optimizeDisjunction(centers), factors);
+        factors.addAll(first.subList(first.size() - suffixLength, first.size()));
+        return ExpressionParser.sequence(reduceFactors(factors), factory);
+    }
+
+    /**
+     * Checks whether all sequences have the given factor at the given position
+     *
+     * @param sequences the sequences
+     * @param position the position, counted from the start or the end
+     * @param factor the factor
+     * @param fromEnd whether the position is counted from the end
+     *
+     * @return true if all sequences have the factor at the position
+     */
+    private static boolean allMatch(List<List<Node>> sequences, int position, Node factor, boolean fromEnd) {
+        for (List<Node> sequence : sequences) {
+            if (sequence.get(fromEnd ? sequence.size() - 1 - position : position) != factor) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the given expression accepts the empty word, as far as this can be decided from the expression and
+     * the factors or members of a top level concatenation or union
+     *
+     * @param node the expression
+     *
+     * @return true if the expression definitely accepts the empty word
+     */
+    private static boolean isNullable(Node node) {
+        if (node instanceof Concat) {
+            for (Node factor : flatten(node)) {
+                if (!isQuantifiedNullable(factor)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (node instanceof Union) {
+            Union union = (Union) node;
+            for (int i = 0; i < union.memberCount(); i++) {
+                if (isQuantifiedNullable(union.getMember(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return isQuantifiedNullable(node);
+    }
+
+    /**
+     * Checks whether the given expression accepts the empty word because of its quantifier, without descending into
+     * the expression
+     *
+     * @param node the expression
+     *
+     * @return true if the expression definitely accepts the empty word
+     */
+    private static boolean isQuantifiedNullable(Node node) {
+        return node instanceof Star || node instanceof Optional || node instanceof Epsilon;
+    }
+
+    /**
+     * Returns the unquantified version of a factor
+     *
+     * @param node the factor
+     *
+     * @return the expression that is quantified, or the factor itself if it is not quantified
+     */
+    private static Node base(Node node) {
+        Node inner = inner(node);
+        return inner != null ? inner : node;
+    }
+
+    /**
+     * Returns the quantifier of a factor
+     *
+     * @param node the factor
+     *
+     * @return the quantifier, or 0 if the factor is not quantified
+     */
+    private static char quantifier(Node node) {
+        if (node instanceof Star) {
+            return '*';
+        }
+        if (node instanceof Plus) {
+            return '+';
+        }
+        if (node instanceof Optional) {
+            return '?';
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the quantified expression of a quantified node
+     *
+     * @param node the node
+     *
+     * @return the quantified expression, or null if the node is not quantified
+     */
+    private static Node inner(Node node) {
+        if (node instanceof Star) {
+            return ((Star) node).getInner();
+        }
+        if (node instanceof Plus) {
+            return ((Plus) node).getInner();
+        }
+        if (node instanceof Optional) {
+            return ((Optional) node).getInner();
+        }
+        return null;
+    }
+
+    /**
+     * Splits an expression into the factors of its concatenation
+     *
+     * @param node the expression
+     *
+     * @return the factors (the expression itself if it is no concatenation)
+     */
+    private static List<Node> flatten(Node node) {
+        List<Node> factors = new ArrayList<>();
+        flatten(node, factors);
+        return factors;
+    }
+
+    /**
+     * Splits an expression into the factors of its concatenation without recursion
+     *
+     * @param node the expression
+     * @param factors the list which receives the factors
+     */
+    private static void flatten(Node node, List<Node> factors) {
+        if (node instanceof Epsilon) {
+            return;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Node next = pending.pop();
+            if (next instanceof Concat) {
+                pending.push(((Concat) next).getRight());
+                pending.push(((Concat) next).getLeft());
+            } else {
+                factors.add(next);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a list ends with the given factors
+     *
+     * @param list the list
+     * @param suffix the factors
+     *
+     * @return true if the list ends with the factors
+     */
+    private static boolean endsWith(List<Node> list, List<Node> suffix) {
+        return suffix.size() <= list.size() && regionMatches(list, list.size() - suffix.size(), suffix);
+    }
+
+    /**
+     * Checks whether a list contains the given factors at the given index
+     *
+     * @param list the list
+     * @param index the index
+     * @param region the factors
+     *
+     * @return true if the factors are found at the index
+     */
+    private static boolean regionMatches(List<Node> list, int index, List<Node> region) {
+        if (region.isEmpty() || index + region.size() > list.size()) {
+            return false;
+        }
+        for (int i = 0; i < region.size(); i++) {
+            if (list.get(index + i) != region.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
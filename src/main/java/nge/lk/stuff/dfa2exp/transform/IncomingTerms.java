@@ -0,0 +1,71 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import java.util.BitSet;
+
+/**
+ * Collects the terms of other equations which refer to each state variable
+ */
+final class IncomingTerms {
+
+    /**
+     * The number of equations which refer to each state variable (excluding self references)
+     */
+    private final int[] count;
+
+    /**
+     * The total length of the prefixes of the terms which refer to each state variable (excluding self references)
+     */
+    private final long[] weight;
+
+    /**
+     * Collects the incoming terms of the equations which are not eliminated yet
+     *
+     * @param equations the equations, indexed by ID
+     * @param candidates the IDs of the remaining equations, excluding the equation of the initial state
+     */
+    IncomingTerms(Equation[] equations, BitSet candidates) {
+        count = new int[equations.length];
+        weight = new long[equations.length];
+        collect(equations[0]);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            collect(equations[i]);
+        }
+    }
+
+    /**
+     * Adds the terms of an equation
+     *
+     * @param equation the equation
+     */
+    private void collect(Equation equation) {
+        int id = equation.getEquationId();
+        equation.forEachTerm((prefix, variable) -> {
+            if (variable != -1 && variable != id) {
+                count[variable]++;
+                weight[variable] += prefix.length();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of equations which refer to the given state variable
+     *
+     * @param variable the state variable
+     *
+     * @return the in-degree of the state variable
+     */
+    int count(int variable) {
+        return count[variable];
+    }
+
+    /**
+     * Returns the total prefix length of the terms which refer to the given state variable
+     *
+     * @param variable the state variable
+     *
+     * @return the incoming weight of the state variable
+     */
+    long weight(int variable) {
+        return weight[variable];
+    }
+}
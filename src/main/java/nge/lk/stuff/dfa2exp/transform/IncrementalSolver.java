@@ -0,0 +1,378 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.transform.ast.NodeFactory;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Solves the equation system of an automaton which is edited between solves, recomputing only what an edit affects
+ * <p>
+ * Eliminating an equation only modifies the equations which are eliminated later, so an edit of a state invalidates the
+ * elimination rounds from the round which eliminated that state onwards. Before an equation is modified in a round, its
+ * previous version is recorded. An edit rolls back the invalidated rounds by restoring the recorded versions, rebuilds
+ * the equation of the edited state and leaves the remaining rounds to the next {@link #solve()}. Edited states are
+ * moved to the end of the elimination order, so editing the same states repeatedly only repeats the last rounds.
+ * <p>
+ * Unlike {@link EquationSystem} the automaton is neither minimized nor trimmed, because edits can make removed states
+ * relevant again. The automaton must only be modified through this solver while it is in use.
+ */
+public final class IncrementalSolver {
+
+    /**
+     * The automaton
+     */
+    private final DFA dfa;
+
+    /**
+     * The alphabet, the character at index i represents symbol i
+     */
+    private final CharSequence alphabet;
+
+    /**
+     * The factory which creates the expression nodes of all equations
+     */
+    private final NodeFactory factory = new NodeFactory();
+
+    /**
+     * The current version of every equation, indexed by ID
+     */
+    private final Equation[] equations;
+
+    /**
+     * The previous versions of every equation, indexed by ID
+     */
+    private final History[] histories;
+
+    /**
+     * The order which selects the equations that are eliminated, except for recently edited equations
+     */
+    private final EliminationOrder eliminationOrder;
+
+    /**
+     * The IDs of the eliminated equations, by round
+     */
+    private final int[] order;
+
+    /**
+     * The number of elimination rounds which have been performed
+     */
+    private int rounds;
+
+    /**
+     * The IDs of the equations which are not eliminated yet, excluding the equation of the initial state
+     */
+    private final BitSet candidates;
+
+    /**
+     * The edited states which are eliminated after all other states, in the order of their last edit
+     */
+    private int[] deferred = new int[8];
+
+    /**
+     * The number of deferred states
+     */
+    private int deferredCount;
+
+    /**
+     * The scratch arrays for merging terms
+     */
+    private final MergeBuffer buffer = new MergeBuffer();
+
+    /**
+     * The last solution, or null if it has to be recomputed
+     */
+    private String solution;
+
+    /**
+     * Creates a solver which eliminates equations by descending index
+     *
+     * @param dfa the automaton. It is used directly, not copied
+     * @param alphabet the alphabet, the character at index i represents symbol i
+     */
+    public IncrementalSolver(DFA dfa, CharSequence alphabet) {
+        this(dfa, alphabet, EliminationOrder.reverseIndex());
+    }
+
+    /**
+     * Creates a solver
+     *
+     * @param dfa the automaton. It is used directly, not copied
+     * @param alphabet the alphabet, the character at index i represents symbol i
+     * @param eliminationOrder the order in which equations are eliminated. Recently edited equations are always
+     * eliminated last
+     */
+    public IncrementalSolver(DFA dfa, CharSequence alphabet, EliminationOrder eliminationOrder) {
+        if (alphabet.length() < dfa.symbolCount()) {
+            throw new IllegalArgumentException("The alphabet has " + alphabet.length() + " symbols, the automaton has " + dfa.symbolCount());
+        }
+
+        this.dfa = dfa;
+        this.alphabet = alphabet;
+        this.eliminationOrder = eliminationOrder;
+        int n = dfa.stateCount();
+        equations = new Equation[n];
+        Arrays.setAll(equations, i -> new Equation(i, dfa, alphabet, factory));
+        histories = new History[n];
+        Arrays.setAll(histories, i -> new History());
+        order = new int[Math.max(0, n - 1)];
+        candidates = new BitSet(n);
+        candidates.set(1, Math.max(1, n));
+        eliminationOrder.prepare(equations);
+    }
+
+    /**
+     * Sets the transition of a state for a symbol
+     *
+     * @param q the index of the source state
+     * @param e the symbol
+     * @param target the index of the target state, or -1 to remove the transition
+     *
+     * @throws IndexOutOfBoundsException if there is no such state or symbol
+     */
+    public void setTransition(int q, int e, int target) {
+        // The automaton validates the indices before anything is invalidated
+        if (dfa.getTransition(q, e) != target) {
+            dfa.setTransition(q, e, target);
+            edited(q);
+        }
+    }
+
+    /**
+     * Marks or unmarks a state as a final state
+     *
+     * @param q the index of the state
+     * @param isFinal whether the state is a final state
+     *
+     * @throws IndexOutOfBoundsException if there is no such state
+     */
+    public void setFinal(int q, boolean isFinal) {
+        if (dfa.isFinal(q) != isFinal) {
+            dfa.setFinal(q, isFinal);
+            edited(q);
+        }
+    }
+
+    /**
+     * Solves the equation system of the automaton in its current state, performing only the elimination rounds which
+     * were invalidated by edits since the last solve
+     *
+     * @return the solution as a regular expression
+     */
+    public String solve() {
+        if (solution == null) {
+            while (rounds < order.length) {
+                eliminateNext();
+            }
+
+            // The equation of the initial state stays reusable, so the last step is performed on a copy
+            Equation result = equations[0].copy();
+            result.applyArdensLemma();
+            result.mergeTerms(buffer);
+            solution = result.toExpression();
+        }
+        return solution;
+    }
+
+    /**
+     * @return the number of elimination rounds which the next {@link #solve()} has to perform
+     */
+    public int pendingRounds() {
+        return order.length - rounds;
+    }
+
+    /**
+     * Invalidates everything which depends on the outgoing transitions or the finality of a state
+     *
+     * @param q the index of the edited state
+     */
+    private void edited(int q) {
+        solution = null;
+
+        // Rounds before the elimination of the state did not use its equation, they stay valid
+        int valid = rounds;
+        for (int r = 0; r < rounds; r++) {
+            if (order[r] == q) {
+                valid = r;
+                break;
+            }
+        }
+        rollBack(valid);
+
+        // The rebuilt equation receives the same substitutions as the old one did in the valid rounds
+        Equation equation = new Equation(q, dfa, alphabet, factory);
+        histories[q].clear();
+        for (int r = 0; r < valid; r++) {
+            if (equation.getPrefix(order[r]) != null) {
+                histories[q].record(r, equation.copy());
+                equation.substitute(equations[order[r]], buffer);
+                equation.mergeTerms(buffer);
+            }
+        }
+        equations[q] = equation;
+
+        if (q != 0) {
+            defer(q);
+        }
+    }
+
+    /**
+     * Undoes elimination rounds
+     *
+     * @param target the number of rounds which remain performed
+     */
+    private void rollBack(int target) {
+        if (target == rounds) {
+            return;
+        }
+        for (int i = 0; i < equations.length; i++) {
+            Equation restored = histories[i].restore(target);
+            if (restored != null) {
+                equations[i] = restored;
+            }
+        }
+        for (int r = target; r < rounds; r++) {
+            candidates.set(order[r]);
+        }
+        rounds = target;
+    }
+
+    /**
+     * Moves a state to the end of the deferred states
+     *
+     * @param q the index of the state
+     */
+    private void defer(int q) {
+        int index = 0;
+        while (index < deferredCount && deferred[index] != q) {
+            index++;
+        }
+        if (index < deferredCount) {
+            System.arraycopy(deferred, index + 1, deferred, index, deferredCount - index - 1);
+            deferredCount--;
+        } else if (deferredCount == deferred.length) {
+            deferred = Arrays.copyOf(deferred, 2 * deferredCount);
+        }
+        deferred[deferredCount++] = q;
+    }
+
+    /**
+     * Selects the equation which is eliminated next
+     *
+     * @return the ID of the equation
+     */
+    private int select() {
+        BitSet preferred = (BitSet) candidates.clone();
+        for (int i = 0; i < deferredCount; i++) {
+            preferred.clear(deferred[i]);
+        }
+        if (!preferred.isEmpty()) {
+            return eliminationOrder.select(equations, preferred);
+        }
+        for (int i = 0; i < deferredCount; i++) {
+            if (candidates.get(deferred[i])) {
+                return deferred[i];
+            }
+        }
+        throw new IllegalStateException("No equation left to eliminate");
+    }
+
+    /**
+     * Performs the next elimination round, recording the previous version of every modified equation
+     */
+    private void eliminateNext() {
+        int round = rounds;
+        int eliminate = select();
+        order[round] = eliminate;
+        candidates.clear(eliminate);
+
+        // Arden's Lemma removes the self reference, so the equation can be substituted
+        Equation value = equations[eliminate];
+        if (value.getPrefix(eliminate) != null) {
+            histories[eliminate].record(round, value.copy());
+            value.applyArdensLemma();
+        }
+
+        substitute(0, value, round);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            substitute(i, value, round);
+        }
+        rounds++;
+    }
+
+    /**
+     * Substitutes an equation into another one if it refers to it
+     *
+     * @param target the ID of the equation which is modified
+     * @param value the equation which is substituted
+     * @param round the current round
+     */
+    private void substitute(int target, Equation value, int round) {
+        Equation equation = equations[target];
+        if (equation.getPrefix(value.getEquationId()) != null) {
+            histories[target].record(round, equation.copy());
+            EquationSystem.substitute(equation, value, SolverListener.NONE, buffer);
+        }
+    }
+
+    /**
+     * The previous versions of an equation, ordered by the round which modified them
+     */
+    private static final class History {
+
+        /**
+         * The rounds which modified the equation
+         */
+        private int[] rounds = new int[4];
+
+        /**
+         * The versions of the equation before the rounds modified it
+         */
+        private Equation[] versions = new Equation[4];
+
+        /**
+         * The number of recorded versions
+         */
+        private int size;
+
+        /**
+         * Records the version of the equation before a round modifies it
+         *
+         * @param round the round
+         * @param version the copy of the equation
+         */
+        void record(int round, Equation version) {
+            if (size == rounds.length) {
+                rounds = Arrays.copyOf(rounds, 2 * size);
+                versions = Arrays.copyOf(versions, 2 * size);
+            }
+            rounds[size] = round;
+            versions[size++] = version;
+        }
+
+        /**
+         * Discards the versions recorded in or after a round
+         *
+         * @param round the first round which is undone
+         *
+         * @return the version before that round, or null if the equation was not modified since then
+         */
+        Equation restore(int round) {
+            Equation restored = null;
+            while (size > 0 && rounds[size - 1] >= round) {
+                restored = versions[--size];
+                versions[size] = null;
+            }
+            return restored;
+        }
+
+        /**
+         * Discards all versions
+         */
+        void clear() {
+            Arrays.fill(versions, 0, size, null);
+            size = 0;
+        }
+    }
+}
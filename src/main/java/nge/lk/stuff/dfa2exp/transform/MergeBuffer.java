@@ -0,0 +1,58 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import nge.lk.stuff.dfa2exp.transform.ast.Node;
+
+import java.util.Arrays;
+
+/**
+ * Reusable arrays for the prefixes which wait to be merged in a {@link TermMap}
+ * <p>
+ * Substitution keeps additional prefixes aside until the terms are merged, which happens right after each substitution.
+ * The arrays are taken from this buffer and returned by the merge, so a solve does not allocate new arrays for every
+ * substituted equation. A buffer is not thread safe; every thread which substitutes uses its own buffer.
+ */
+final class MergeBuffer {
+
+    /**
+     * The length of newly allocated arrays
+     */
+    private static final int INITIAL_LENGTH = 4;
+
+    /**
+     * The arrays which are not in use
+     */
+    private Node[][] free = new Node[16][];
+
+    /**
+     * The number of arrays which are not in use
+     */
+    private int freeCount;
+
+    /**
+     * Takes an array, allocating one if none is available
+     *
+     * @return an array of at least length 2 which contains only nulls
+     */
+    Node[] take() {
+        if (freeCount == 0) {
+            return new Node[INITIAL_LENGTH];
+        }
+        Node[] array = free[--freeCount];
+        free[freeCount] = null;
+        return array;
+    }
+
+    /**
+     * Returns an array which is no longer used
+     *
+     * @param array the array
+     * @param used the number of elements which were used. They are cleared, so that the nodes can be collected
+     */
+    void release(Node[] array, int used) {
+        Arrays.fill(array, 0, used, null);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, 2 * free.length);
+        }
+        free[freeCount++] = array;
+    }
+}
@@ -0,0 +1,56 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+/**
+ * Thrown if solving an {@link EquationSystem} exceeds a limit of its {@link SolveOptions}
+ * <p>
+ * The equation system is left partially solved.
+ */
+public class SolveLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limits which can be exceeded
+     */
+    public enum Limit {
+        EXPRESSION_LENGTH,
+        TOTAL_WEIGHT,
+        TIME
+    }
+
+    /**
+     * The exceeded limit
+     */
+    private final Limit limit;
+
+    /**
+     * The progress at the time of the abort
+     */
+    private final transient SolveStatistics statistics;
+
+    /**
+     * Creates an exception
+     *
+     * @param limit the exceeded limit
+     * @param statistics the progress at the time of the abort
+     */
+    SolveLimitExceededException(Limit limit, SolveStatistics statistics) {
+        super("Limit exceeded (" + limit + "): " + statistics);
+        this.limit = limit;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the exceeded limit
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the progress at the time of the abort
+     */
+    public SolveStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,94 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits for solving an {@link EquationSystem}
+ * <p>
+ * The limits are checked after every elimination round and before the solution is rendered. If a limit is exceeded,
+ * solving is aborted with a {@link SolveLimitExceededException}. Expressions are stored as shared subtrees, so their
+ * rendered length can grow exponentially while the memory they occupy does not; the length limits reject such systems
+ * before the solution is rendered. By default there are no limits.
+ */
+public class SolveOptions {
+
+    /**
+     * The maximum length of a single equation (the sum of the lengths of its terms), or the final expression
+     */
+    private long maxExpressionLength = Long.MAX_VALUE;
+
+    /**
+     * The maximum sum of the lengths of all terms of all remaining equations
+     */
+    private long maxTotalWeight = Long.MAX_VALUE;
+
+    /**
+     * The maximum duration of solving in nanoseconds
+     */
+    private long timeLimit = Long.MAX_VALUE;
+
+    /**
+     * Sets the maximum length of a single equation (the sum of the lengths of its terms) and of the final expression
+     *
+     * @param maxExpressionLength the maximum length
+     */
+    public void setMaxExpressionLength(long maxExpressionLength) {
+        if (maxExpressionLength < 1) {
+            throw new IllegalArgumentException("Maximum expression length must be positive: " + maxExpressionLength);
+        }
+        this.maxExpressionLength = maxExpressionLength;
+    }
+
+    /**
+     * Sets the maximum sum of the lengths of all terms of all remaining equations
+     *
+     * @param maxTotalWeight the maximum total weight
+     */
+    public void setMaxTotalWeight(long maxTotalWeight) {
+        if (maxTotalWeight < 1) {
+            throw new IllegalArgumentException("Maximum total weight must be positive: " + maxTotalWeight);
+        }
+        this.maxTotalWeight = maxTotalWeight;
+    }
+
+    /**
+     * Sets the maximum duration of solving, measured from the start of {@link EquationSystem#solve(SolveOptions)}
+     *
+     * @param duration the maximum duration
+     * @param unit the unit of the duration
+     */
+    public void setTimeLimit(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Time limit must not be negative: " + duration);
+        }
+        timeLimit = unit.toNanos(duration);
+    }
+
+    /**
+     * @return the maximum length of a single equation and of the final expression
+     */
+    public long getMaxExpressionLength() {
+        return maxExpressionLength;
+    }
+
+    /**
+     * @return the maximum sum of the lengths of all terms of all remaining equations
+     */
+    public long getMaxTotalWeight() {
+        return maxTotalWeight;
+    }
+
+    /**
+     * @return the maximum duration of solving in nanoseconds
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * @return true if a limit on the length of expressions is set, which requires measuring the equations every round
+     */
+    boolean limitsLength() {
+        return maxExpressionLength != Long.MAX_VALUE || maxTotalWeight != Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,90 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+/**
+ * The progress of solving an {@link EquationSystem} at some point in time
+ */
+public final class SolveStatistics {
+
+    /**
+     * The number of eliminated equations
+     */
+    private final int eliminatedEquations;
+
+    /**
+     * The number of equations which were not eliminated yet, including the equation of the initial state
+     */
+    private final int remainingEquations;
+
+    /**
+     * The length of the longest remaining equation
+     */
+    private final long maxExpressionLength;
+
+    /**
+     * The sum of the lengths of all remaining equations
+     */
+    private final long totalWeight;
+
+    /**
+     * The time spent solving in nanoseconds
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Creates statistics
+     *
+     * @param eliminatedEquations the number of eliminated equations
+     * @param remainingEquations the number of equations which were not eliminated yet
+     * @param maxExpressionLength the length of the longest remaining equation
+     * @param totalWeight the sum of the lengths of all remaining equations
+     * @param elapsedNanos the time spent solving in nanoseconds
+     */
+    SolveStatistics(int eliminatedEquations, int remainingEquations, long maxExpressionLength, long totalWeight, long elapsedNanos) {
+        this.eliminatedEquations = eliminatedEquations;
+        this.remainingEquations = remainingEquations;
+        this.maxExpressionLength = maxExpressionLength;
+        this.totalWeight = totalWeight;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of eliminated equations
+     */
+    public int getEliminatedEquations() {
+        return eliminatedEquations;
+    }
+
+    /**
+     * @return the number of equations which were not eliminated yet, including the equation of the initial state
+     */
+    public int getRemainingEquations() {
+        return remainingEquations;
+    }
+
+    /**
+     * @return the length of the longest remaining equation (the sum of the lengths of its terms)
+     */
+    public long getMaxExpressionLength() {
+        return maxExpressionLength;
+    }
+
+    /**
+     * @return the sum of the lengths of the terms of all remaining equations
+     */
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return the time spent solving in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d eliminated, %d remaining, longest equation %d, total weight %d, %d ms",
+                eliminatedEquations, remainingEquations, maxExpressionLength, totalWeight, elapsedNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,79 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+/**
+ * Receives metrics from solving {@link EquationSystem}s and optimizing expressions
+ * <p>
+ * All methods do nothing by default, so implementations only override the events they are interested in. Solvers and
+ * optimizers use {@link #NONE} unless a listener is set. Metrics which need extra work, like the weight and duration of
+ * elimination rounds, are only computed if a listener other than {@link #NONE} is set. With parallel solving
+ * {@link #substituted(int, int, int)} is called concurrently from multiple threads.
+ */
+public interface SolverListener {
+
+    /**
+     * The listener which ignores all events
+     */
+    SolverListener NONE = new SolverListener() {
+    };
+
+    /**
+     * Called when solving starts
+     *
+     * @param equationCount the number of equations
+     */
+    default void solveStarted(int equationCount) {
+    }
+
+    /**
+     * Called when Arden's Lemma resolved the self reference of an equation
+     *
+     * @param equationId the ID of the equation
+     * @param termCount the number of terms of the equation afterwards
+     */
+    default void ardenApplied(int equationId, int termCount) {
+    }
+
+    /**
+     * Called when an equation was substituted into another equation and the terms of the modified equation were merged
+     *
+     * @param targetId the ID of the modified equation
+     * @param valueId the ID of the substituted equation
+     * @param termCount the number of terms of the modified equation afterwards
+     */
+    default void substituted(int targetId, int valueId, int termCount) {
+    }
+
+    /**
+     * Called after an equation was eliminated
+     *
+     * @param equationId the ID of the eliminated equation
+     * @param remaining the number of equations which still have to be eliminated
+     * @param weight the weight of the eliminated equation alone (the sum of the lengths of its terms), i.e. the
+     *               expression length that was copied into the referring equations. This is not the total weight of
+     *               the system
+     * @param nanos the duration of the round in nanoseconds
+     */
+    default void roundCompleted(int equationId, int remaining, long weight, long nanos) {
+    }
+
+    /**
+     * Called when solving completed successfully
+     *
+     * @param expressionLength the length of the solution
+     * @param nanos the duration of solving in nanoseconds
+     */
+    default void solveCompleted(long expressionLength, long nanos) {
+    }
+
+    /**
+     * Called when an optimizer completed
+     *
+     * @param inputLength the length of the expression before optimization
+     * @param outputLength the length of the optimized expression
+     * @param maxDepth the maximum nesting depth of the subexpressions the optimizer visited
+     * @param rewrites the number of subexpressions which were changed by the optimizer
+     * @param nanos the duration of the optimization in nanoseconds
+     */
+    default void optimizationCompleted(long inputLength, long outputLength, int maxDepth, int rewrites, long nanos) {
+    }
+}
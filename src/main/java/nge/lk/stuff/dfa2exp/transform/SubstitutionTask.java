@@ -0,0 +1,92 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Substitutes an equation into a range of other equations and merges their terms, splitting the range between
+ * workers of a fork join pool
+ */
+class SubstitutionTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of equations below which a range is not split any further
+     */
+    static final int THRESHOLD = 8;
+
+    /**
+     * The equations, indexed by ID
+     */
+    private final Equation[] equations;
+
+    /**
+     * The IDs of the equations which are modified
+     */
+    private final int[] targets;
+
+    /**
+     * The first index into {@link #targets} handled by this task (inclusive)
+     */
+    private final int from;
+
+    /**
+     * The last index into {@link #targets} handled by this task (exclusive)
+     */
+    private final int to;
+
+    /**
+     * The equation which is substituted
+     */
+    private final Equation value;
+
+    /**
+     * The listener which receives the substitution events
+     */
+    private final SolverListener listener;
+
+    /**
+     * Creates a task which handles all target equations
+     *
+     * @param equations the equations, indexed by ID
+     * @param targets the IDs of the equations which are modified
+     * @param value the equation which is substituted. It is only read, so it can be shared between tasks
+     * @param listener the listener which receives the substitution events
+     */
+    SubstitutionTask(Equation[] equations, int[] targets, Equation value, SolverListener listener) {
+        this(equations, targets, 0, targets.length, value, listener);
+    }
+
+    /**
+     * Creates a task which handles a range of target equations
+     *
+     * @param equations the equations, indexed by ID
+     * @param targets the IDs of the equations which are modified
+     * @param from the first index into targets (inclusive)
+     * @param to the last index into targets (exclusive)
+     * @param value the equation which is substituted
+     * @param listener the listener which receives the substitution events
+     */
+    private SubstitutionTask(Equation[] equations, int[] targets, int from, int to, Equation value, SolverListener listener) {
+        this.equations = equations;
+        this.targets = targets;
+        this.from = from;
+        this.to = to;
+        this.value = value;
+        this.listener = listener;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            // Tasks can run on any worker, so each range has its own scratch arrays
+            MergeBuffer buffer = new MergeBuffer();
+            for (int i = from; i < to; i++) {
+                EquationSystem.substitute(equations[targets[i]], value, listener, buffer);
+            }
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new SubstitutionTask(equations, targets, from, middle, value, listener), new SubstitutionTask(equations, targets, middle, to, value, listener));
+        }
+    }
+}
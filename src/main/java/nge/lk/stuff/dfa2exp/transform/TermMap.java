@@ -0,0 +1,335 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import nge.lk.stuff.dfa2exp.transform.ast.Node;
+import nge.lk.stuff.dfa2exp.transform.ast.NodeFactory;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Maps state variables to the prefixes of the terms of an equation
+ * <p>
+ * This is an open addressing hash map (linear probing) from int keys to nodes. A key can receive more than one prefix
+ * through {@link #add(int, Node)}, the additional prefixes are kept aside until {@link #merge(NodeFactory)} combines
+ * them into a union. All other operations only see the merged prefix.
+ */
+final class TermMap {
+
+    /**
+     * Marks an unused slot. State variables are -1 or greater
+     */
+    private static final int FREE = Integer.MIN_VALUE;
+
+    /**
+     * The keys (state variables) of the slots
+     */
+    private int[] keys;
+
+    /**
+     * The merged prefixes of the slots
+     */
+    private Node[] values;
+
+    /**
+     * The prefixes waiting to be merged for every slot (including the merged prefix), null if there are none
+     */
+    private Node[][] pending;
+
+    /**
+     * The number of prefixes waiting to be merged for every slot
+     */
+    private int[] pendingCount;
+
+    /**
+     * The number of slots with prefixes waiting to be merged
+     */
+    private int pendingSlots;
+
+    /**
+     * The number of keys
+     */
+    private int size;
+
+    /**
+     * Creates an empty map
+     *
+     * @param expectedSize the number of keys that is expected
+     */
+    TermMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Creates a copy of a map whose terms are merged
+     *
+     * @param source the map to copy
+     */
+    private TermMap(TermMap source) {
+        keys = source.keys.clone();
+        values = source.values.clone();
+        pending = new Node[keys.length][];
+        pendingCount = new int[keys.length];
+        size = source.size;
+    }
+
+    /**
+     * Allocates empty tables
+     *
+     * @param capacity the capacity (a power of two)
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new Node[capacity];
+        pending = new Node[capacity][];
+        pendingCount = new int[capacity];
+    }
+
+    /**
+     * Computes the preferred slot of a key
+     *
+     * @param key the key
+     *
+     * @return the slot index
+     */
+    private int index(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (keys.length - 1);
+    }
+
+    /**
+     * Finds the slot of a key
+     *
+     * @param key the key
+     *
+     * @return the slot index, or -1 if the key is not present
+     */
+    private int find(int key) {
+        int mask = keys.length - 1;
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+            if (keys[i] == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the merged prefix of a state variable
+     *
+     * @param key the state variable
+     *
+     * @return the prefix, or null if there is no term for the state variable
+     */
+    Node get(int key) {
+        int slot = find(key);
+        return slot == -1 ? null : values[slot];
+    }
+
+    /**
+     * Adds a term. If there already is a term for the state variable the prefix is kept aside until the next merge
+     *
+     * @param key the state variable
+     * @param prefix the prefix
+     */
+    void add(int key, Node prefix) {
+        add(key, prefix, null);
+    }
+
+    /**
+     * Adds a term. If there already is a term for the state variable the prefix is kept aside until the next merge
+     *
+     * @param key the state variable
+     * @param prefix the prefix
+     * @param buffer provides the arrays for the prefixes which are kept aside, or null to allocate them
+     */
+    void add(int key, Node prefix, MergeBuffer buffer) {
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                addPending(i, prefix, buffer);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = prefix;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Keeps a prefix aside until the next merge
+     *
+     * @param slot the slot of the state variable
+     * @param prefix the prefix
+     * @param buffer provides the array for the prefixes of the slot, or null to allocate it
+     */
+    private void addPending(int slot, Node prefix, MergeBuffer buffer) {
+        Node[] slotPending = pending[slot];
+        if (slotPending == null) {
+            slotPending = buffer == null ? new Node[4] : buffer.take();
+            slotPending[0] = values[slot];
+            pendingCount[slot] = 1;
+            pending[slot] = slotPending;
+            pendingSlots++;
+        } else if (pendingCount[slot] == slotPending.length) {
+            slotPending = Arrays.copyOf(slotPending, slotPending.length * 2);
+            pending[slot] = slotPending;
+        }
+        slotPending[pendingCount[slot]++] = prefix;
+    }
+
+    /**
+     * Removes a term
+     *
+     * @param key the state variable
+     *
+     * @return the merged prefix of the removed term, or null if there was no term for the state variable
+     */
+    Node remove(int key) {
+        int slot = find(key);
+        if (slot == -1) {
+            return null;
+        }
+
+        assert pending[slot] == null : "Removing a term which is not merged";
+        Node removed = values[slot];
+
+        // Backward shift deletion: move later entries of the probe sequence into the gap
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int i = (slot + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            int preferred = index(keys[i]);
+            if (((i - preferred) & mask) >= ((i - gap) & mask)) {
+                move(i, gap);
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+        pending[gap] = null;
+        pendingCount[gap] = 0;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Moves a slot
+     *
+     * @param from the slot to move
+     * @param to the unused target slot
+     */
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        values[to] = values[from];
+        pending[to] = pending[from];
+        pendingCount[to] = pendingCount[from];
+    }
+
+    /**
+     * Doubles the capacity
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        Node[] oldValues = values;
+        Node[][] oldPending = pending;
+        int[] oldPendingCount = pendingCount;
+        allocate(keys.length * 2);
+
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != FREE) {
+                int i = index(oldKeys[j]);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                pending[i] = oldPending[j];
+                pendingCount[i] = oldPendingCount[j];
+            }
+        }
+    }
+
+    /**
+     * Combines all prefixes of each state variable into a union, so there is one prefix per state variable
+     *
+     * @param factory the factory which creates the unions
+     */
+    void merge(NodeFactory factory) {
+        merge(factory, null);
+    }
+
+    /**
+     * Combines all prefixes of each state variable into a union, so there is one prefix per state variable
+     *
+     * @param factory the factory which creates the unions
+     * @param buffer receives the arrays of the prefixes which were kept aside, or null to drop them
+     */
+    void merge(NodeFactory factory, MergeBuffer buffer) {
+        for (int i = 0; pendingSlots > 0 && i < keys.length; i++) {
+            if (pending[i] != null) {
+                values[i] = factory.union(pending[i], pendingCount[i]);
+                if (buffer != null) {
+                    buffer.release(pending[i], pendingCount[i]);
+                }
+                pending[i] = null;
+                pendingCount[i] = 0;
+                pendingSlots--;
+            }
+        }
+    }
+
+    /**
+     * Replaces every merged prefix
+     *
+     * @param function computes the new prefix from the old one
+     */
+    void replaceAll(UnaryOperator<Node> function) {
+        assert pendingSlots == 0 : "Terms are not merged";
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                values[i] = function.apply(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Performs the given action for every term
+     *
+     * @param action the action, receiving the merged prefix and the state variable of each term
+     */
+    void forEach(ObjIntConsumer<Node> action) {
+        assert pendingSlots == 0 : "Terms are not merged";
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept(values[i], keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Copies this map. The prefixes are immutable, so they are shared with the copy
+     *
+     * @return the copy
+     */
+    TermMap copy() {
+        assert pendingSlots == 0 : "Terms are not merged";
+        return new TermMap(this);
+    }
+
+    /**
+     * @return the number of state variables with at least one term (-1 counts as a state variable)
+     */
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,57 @@
+package nge.lk.stuff.dfa2exp.transform;
+
+import nge.lk.stuff.dfa2exp.transform.ast.Node;
+
+import java.util.BitSet;
+
+/**
+ * Eliminates the equation whose elimination adds the least expression length to the system first. Ties are broken by
+ * descending index
+ * <p>
+ * Eliminating X copies every outgoing prefix of X into every equation referring to X and vice versa, and the closure of
+ * the self reference of X into every new term. Given in-degree i, out-degree o, incoming weight W(in), outgoing weight
+ * W(out) and self reference weight W(loop) the weight grows by
+ * W(in) * (o - 1) + W(out) * (i - 1) + W(loop) * (i * o - 1).
+ */
+class WeightOrder implements EliminationOrder {
+
+    @Override
+    public int select(Equation[] equations, BitSet candidates) {
+        IncomingTerms incoming = new IncomingTerms(equations, candidates);
+
+        int best = -1;
+        long bestWeight = 0;
+        for (int i = candidates.previousSetBit(equations.length - 1); i >= 0; i = candidates.previousSetBit(i - 1)) {
+            long weight = weight(equations[i], incoming);
+            if (best == -1 || weight < bestWeight) {
+                best = i;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the weight added by eliminating an equation
+     *
+     * @param equation the equation
+     * @param incoming the incoming terms of all equations
+     *
+     * @return the added weight
+     */
+    private static long weight(Equation equation, IncomingTerms incoming) {
+        int id = equation.getEquationId();
+        Node loop = equation.getPrefix(id);
+        long loopWeight = loop != null ? loop.length() + 1 : 0;
+        long outDegree = equation.termCount() - (loop != null ? 1 : 0);
+        long[] outWeight = new long[1];
+        equation.forEachTerm((prefix, variable) -> {
+            if (variable != id) {
+                outWeight[0] += prefix.length();
+            }
+        });
+
+        long inDegree = incoming.count(id);
+        return incoming.weight(id) * (outDegree - 1) + outWeight[0] * (inDegree - 1) + loopWeight * (inDegree * outDegree - 1);
+    }
+}
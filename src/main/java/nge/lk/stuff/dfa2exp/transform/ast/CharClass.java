@@ -0,0 +1,133 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+import java.util.Arrays;
+
+/**
+ * Represents a set of at least two characters, stored as sorted character ranges
+ * <p>
+ * The ranges are disjoint and not adjacent, so every set has exactly one representation. Ranges of at least three
+ * characters are rendered as {@code a-z}, so {@code [0-9A-F]} takes 7 characters instead of 18.
+ */
+public final class CharClass extends Node {
+
+    /**
+     * The ranges as pairs of first and last (inclusive) character
+     */
+    private final char[] ranges;
+
+    /**
+     * Creates a character class
+     *
+     * @param ranges the ranges as pairs of first and last (inclusive) character. Must be sorted, disjoint and not
+     *               adjacent. The array is not copied
+     */
+    CharClass(char[] ranges) {
+        super(31 * 13 + Arrays.hashCode(ranges), length(ranges));
+        this.ranges = ranges;
+    }
+
+    /**
+     * Computes the rendered length of a character class
+     *
+     * @param ranges the ranges
+     *
+     * @return the length
+     */
+    private static long length(char[] ranges) {
+        long length = 2;
+        for (int i = 0; i < ranges.length; i += 2) {
+            length += rangeLength(ranges[i], ranges[i + 1]);
+        }
+        return length;
+    }
+
+    /**
+     * Computes the rendered length of a range inside a character class
+     *
+     * @param first the first character
+     * @param last the last character (inclusive)
+     *
+     * @return the length
+     */
+    static int rangeLength(char first, char last) {
+        int length = Characters.length(first, true);
+        if (last != first) {
+            // Two characters are written as they are, longer ranges with a separating -
+            length += Characters.length(last, true) + (last - first > 1 ? 1 : 0);
+        }
+        return length;
+    }
+
+    /**
+     * @return the number of ranges
+     */
+    public int rangeCount() {
+        return ranges.length / 2;
+    }
+
+    /**
+     * Returns the first character of a range
+     *
+     * @param i the index of the range
+     *
+     * @return the first character
+     */
+    public char getRangeStart(int i) {
+        return ranges[2 * i];
+    }
+
+    /**
+     * Returns the last character of a range
+     *
+     * @param i the index of the range
+     *
+     * @return the last character (inclusive)
+     */
+    public char getRangeEnd(int i) {
+        return ranges[2 * i + 1];
+    }
+
+    /**
+     * @return the number of characters in this class
+     */
+    public int characterCount() {
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            count += ranges[i + 1] - ranges[i] + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether this class contains the given character
+     *
+     * @param c the character
+     *
+     * @return true if the character is part of this class
+     */
+    public boolean contains(char c) {
+        int low = 0;
+        int high = rangeCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (c < ranges[2 * mid]) {
+                high = mid - 1;
+            } else if (c > ranges[2 * mid + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return true;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        return Arrays.equals(ranges, ((CharClass) other).ranges);
+    }
+}
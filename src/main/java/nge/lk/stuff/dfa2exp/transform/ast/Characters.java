@@ -0,0 +1,81 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+import java.io.IOException;
+
+/**
+ * Escapes characters for regular expressions
+ * <p>
+ * Metacharacters are escaped with a backslash, control characters and surrogates are written as hexadecimal escapes
+ * (two digits after x or four digits after u). Every other character is written as it is.
+ */
+final class Characters {
+
+    /**
+     * The characters which have to be escaped outside of character classes
+     */
+    private static final String META = "\\^$.|?*+()[]{}";
+
+    /**
+     * The characters which have to be escaped inside of character classes
+     */
+    private static final String CLASS_META = "\\[]^-&";
+
+    /**
+     * The hexadecimal digits
+     */
+    private static final String HEX = "0123456789abcdef";
+
+    /**
+     * Computes the length of an escaped character
+     *
+     * @param c the character
+     * @param inClass whether the character is part of a character class
+     *
+     * @return the length
+     */
+    static int length(char c, boolean inClass) {
+        if (isUnprintable(c)) {
+            return c <= 0xFF ? 4 : 6;
+        }
+        return (inClass ? CLASS_META : META).indexOf(c) >= 0 ? 2 : 1;
+    }
+
+    /**
+     * Writes an escaped character
+     *
+     * @param out the output
+     * @param c the character
+     * @param inClass whether the character is part of a character class
+     *
+     * @throws IOException if writing to the output fails
+     */
+    static void append(Appendable out, char c, boolean inClass) throws IOException {
+        if (isUnprintable(c)) {
+            if (c <= 0xFF) {
+                out.append("\\x").append(HEX.charAt(c >> 4)).append(HEX.charAt(c & 0xF));
+            } else {
+                out.append("\\u").append(HEX.charAt(c >> 12)).append(HEX.charAt(c >> 8 & 0xF))
+                        .append(HEX.charAt(c >> 4 & 0xF)).append(HEX.charAt(c & 0xF));
+            }
+        } else {
+            if ((inClass ? CLASS_META : META).indexOf(c) >= 0) {
+                out.append('\\');
+            }
+            out.append(c);
+        }
+    }
+
+    /**
+     * Checks whether a character has to be written as a hexadecimal escape
+     *
+     * @param c the character
+     *
+     * @return true if the character is a control character or a surrogate
+     */
+    private static boolean isUnprintable(char c) {
+        return Character.isISOControl(c) || Character.isSurrogate(c);
+    }
+
+    private Characters() {
+    }
+}
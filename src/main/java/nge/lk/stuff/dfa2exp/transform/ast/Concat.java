@@ -0,0 +1,54 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents the concatenation of two expressions
+ */
+public final class Concat extends Node {
+
+    /**
+     * The left operand
+     */
+    private final Node left;
+
+    /**
+     * The right operand
+     */
+    private final Node right;
+
+    /**
+     * Creates a concatenation node
+     *
+     * @param left the left operand
+     * @param right the right operand
+     */
+    Concat(Node left, Node right) {
+        super(31 * (31 * 3 + left.hashCode()) + right.hashCode(), left.length() + right.length());
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * @return the left operand
+     */
+    public Node getLeft() {
+        return left;
+    }
+
+    /**
+     * @return the right operand
+     */
+    public Node getRight() {
+        return right;
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return false;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        Concat concat = (Concat) other;
+        return left == concat.left && right == concat.right;
+    }
+}
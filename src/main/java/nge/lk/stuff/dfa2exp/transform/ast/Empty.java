@@ -0,0 +1,35 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents the empty language
+ */
+public final class Empty extends Node {
+
+    /**
+     * The only instance
+     */
+    static final Empty INSTANCE = new Empty();
+
+    /**
+     * The rendered form of the empty language, a group that can not match anything
+     */
+    static final String EXPRESSION = "(?!)";
+
+    /**
+     * Creates the empty language
+     */
+    private Empty() {
+        super(13, EXPRESSION.length());
+        setNodeId(-2);
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return true;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents the empty word
+ */
+public final class Epsilon extends Node {
+
+    /**
+     * The only instance
+     */
+    static final Epsilon INSTANCE = new Epsilon();
+
+    /**
+     * Creates the empty word
+     */
+    private Epsilon() {
+        super(11, 0);
+        setNodeId(-1);
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return false;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        return true;
+    }
+}
@@ -0,0 +1,300 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Parses regular expressions into expression trees
+ * <p>
+ * The supported syntax is the one produced by the equation system solver and the optimizers: characters, escaped
+ * characters ({@code \c} for a non-alphanumeric c and hexadecimal escapes with two digits after x or four digits after
+ * u), character classes with ranges but without negation, groups, disjunctions (including empty alternatives) and the
+ * quantifiers *, + and ?. The group {@code (?!)} is parsed as the empty language. Parsing does not recurse, so
+ * arbitrarily deep groups are supported.
+ */
+public final class ExpressionParser {
+
+    /**
+     * Parses the given expression
+     *
+     * @param expression the regular expression
+     * @param factory the factory which creates the nodes
+     *
+     * @return the root of the expression tree
+     *
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    public static Node parse(CharSequence expression, NodeFactory factory) {
+        Deque<Group> open = new ArrayDeque<>();
+        Group current = new Group();
+
+        int length = expression.length();
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            switch (c) {
+                case '(':
+                    if (startsWith(expression, i + 1, "?!)")) {
+                        current.sequence.add(factory.empty());
+                        i += 3;
+                    } else {
+                        open.push(current);
+                        current = new Group();
+                    }
+                    break;
+                case ')':
+                    if (open.isEmpty()) {
+                        throw new IllegalArgumentException("Unbalanced ) at index " + i);
+                    }
+                    Node group = current.finish(factory);
+                    current = open.pop();
+                    current.sequence.add(group);
+                    break;
+                case '|':
+                    current.alternatives.add(sequence(current.sequence, factory));
+                    current.sequence.clear();
+                    break;
+                case '[':
+                    i = parseClass(expression, i, current.sequence, factory);
+                    break;
+                case '\\':
+                    current.sequence.add(factory.symbol(unescape(expression, i)));
+                    i += escapeLength(expression, i) - 1;
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                    current.quantify(c, i, factory);
+                    break;
+                default:
+                    current.sequence.add(factory.symbol(c));
+                    break;
+            }
+        }
+
+        if (!open.isEmpty()) {
+            throw new IllegalArgumentException("Unclosed group");
+        }
+        return current.finish(factory);
+    }
+
+    /**
+     * Creates the right associative concatenation of the given expressions
+     *
+     * @param factors the expressions
+     * @param factory the factory which creates the nodes
+     *
+     * @return the concatenation, or the empty word if there are no expressions
+     */
+    public static Node sequence(List<Node> factors, NodeFactory factory) {
+        Node result = factory.epsilon();
+        for (int i = factors.size() - 1; i >= 0; i--) {
+            result = factory.concat(factors.get(i), result);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a character class
+     *
+     * @param expression the expression
+     * @param start the index of the opening [
+     * @param sequence the factors of the current alternative, receiving the class
+     * @param factory the factory which creates the nodes
+     *
+     * @return the index of the closing ]
+     */
+    private static int parseClass(CharSequence expression, int start, List<Node> sequence, NodeFactory factory) {
+        long[] ranges = new long[8];
+        int count = 0;
+        int i = start + 1;
+        while (true) {
+            if (i >= expression.length()) {
+                throw new IllegalArgumentException("Unclosed class at index " + start);
+            }
+            if (expression.charAt(i) == ']') {
+                break;
+            }
+
+            char first = classCharacter(expression, i);
+            i += classCharacterLength(expression, i);
+            char last = first;
+            if (i + 1 < expression.length() && expression.charAt(i) == '-' && expression.charAt(i + 1) != ']') {
+                last = classCharacter(expression, i + 1);
+                i += 1 + classCharacterLength(expression, i + 1);
+                if (last < first) {
+                    throw new IllegalArgumentException("Invalid range at index " + i);
+                }
+            }
+
+            if (count == ranges.length) {
+                ranges = Arrays.copyOf(ranges, 2 * count);
+            }
+            ranges[count++] = NodeFactory.encodeRange(first, last);
+        }
+
+        Node characters = factory.characters(ranges, count);
+        if (characters == factory.empty()) {
+            throw new IllegalArgumentException("Empty class at index " + start);
+        }
+        sequence.add(characters);
+        return i;
+    }
+
+    /**
+     * Reads a (possibly escaped) character of a character class
+     *
+     * @param expression the expression
+     * @param index the index of the character
+     *
+     * @return the character
+     */
+    private static char classCharacter(CharSequence expression, int index) {
+        return expression.charAt(index) == '\\' ? unescape(expression, index) : expression.charAt(index);
+    }
+
+    /**
+     * Computes the length of a (possibly escaped) character of a character class
+     *
+     * @param expression the expression
+     * @param index the index of the character
+     *
+     * @return the length
+     */
+    private static int classCharacterLength(CharSequence expression, int index) {
+        return expression.charAt(index) == '\\' ? escapeLength(expression, index) : 1;
+    }
+
+    /**
+     * Reads an escaped character
+     *
+     * @param expression the expression
+     * @param index the index of the backslash
+     *
+     * @return the character
+     */
+    private static char unescape(CharSequence expression, int index) {
+        int length = escapeLength(expression, index);
+        char c = expression.charAt(index + 1);
+        if (length == 2) {
+            if (Character.isLetterOrDigit(c)) {
+                throw new IllegalArgumentException("Unsupported escape sequence at index " + index);
+            }
+            return c;
+        }
+
+        int value = 0;
+        for (int i = index + 2; i < index + length; i++) {
+            int digit = Character.digit(expression.charAt(i), 16);
+            if (digit == -1) {
+                throw new IllegalArgumentException("Invalid hexadecimal escape at index " + index);
+            }
+            value = 16 * value + digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Computes the length of an escape sequence
+     *
+     * @param expression the expression
+     * @param index the index of the backslash
+     *
+     * @return the length, including the backslash
+     */
+    private static int escapeLength(CharSequence expression, int index) {
+        if (index + 1 >= expression.length()) {
+            throw new IllegalArgumentException("Incomplete escape sequence at index " + index);
+        }
+
+        char c = expression.charAt(index + 1);
+        int length = c == 'x' ? 4 : c == 'u' ? 6 : 2;
+        if (index + length > expression.length()) {
+            throw new IllegalArgumentException("Incomplete escape sequence at index " + index);
+        }
+        return length;
+    }
+
+    /**
+     * Checks whether the expression contains the given string at the given index
+     *
+     * @param expression the expression
+     * @param index the index
+     * @param s the string
+     *
+     * @return true if the string is found
+     */
+    private static boolean startsWith(CharSequence expression, int index, String s) {
+        if (index + s.length() > expression.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (expression.charAt(index + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ExpressionParser() {
+    }
+
+    /**
+     * A group (or the whole expression) which is being parsed
+     */
+    private static final class Group {
+
+        /**
+         * The completed alternatives of the group
+         */
+        private final List<Node> alternatives = new ArrayList<>();
+
+        /**
+         * The factors of the current alternative
+         */
+        private final List<Node> sequence = new ArrayList<>();
+
+        /**
+         * Applies a quantifier to the last factor
+         *
+         * @param quantifier the quantifier
+         * @param index the index of the quantifier (for error messages)
+         * @param factory the factory which creates the nodes
+         */
+        private void quantify(char quantifier, int index, NodeFactory factory) {
+            if (sequence.isEmpty()) {
+                throw new IllegalArgumentException("Quantifier without operand at index " + index);
+            }
+            Node operand = sequence.remove(sequence.size() - 1);
+            switch (quantifier) {
+                case '*':
+                    sequence.add(factory.star(operand));
+                    break;
+                case '+':
+                    sequence.add(factory.plus(operand));
+                    break;
+                default:
+                    sequence.add(factory.optional(operand));
+                    break;
+            }
+        }
+
+        /**
+         * Completes the group
+         *
+         * @param factory the factory which creates the nodes
+         *
+         * @return the expression of the group
+         */
+        private Node finish(NodeFactory factory) {
+            Node last = sequence(sequence, factory);
+            if (alternatives.isEmpty()) {
+                return last;
+            }
+            alternatives.add(last);
+            return factory.union(alternatives);
+        }
+    }
+}
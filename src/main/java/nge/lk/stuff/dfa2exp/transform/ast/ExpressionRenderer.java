@@ -0,0 +1,179 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Renders expression trees to regular expressions
+ * <p>
+ * Rendering does not recurse, so arbitrarily deep trees can be rendered. Shared subtrees are rendered once per
+ * occurrence.
+ */
+public final class ExpressionRenderer {
+
+    /**
+     * Renders the given expression
+     *
+     * @param root the expression
+     *
+     * @return the regular expression
+     */
+    public static String render(Node root) {
+        return render(root, false);
+    }
+
+    /**
+     * Renders the given expression
+     *
+     * @param root the expression
+     * @param topLevel whether the expression is the whole regular expression. A top level union does not need a group
+     *
+     * @return the regular expression
+     */
+    public static String render(Node root, boolean topLevel) {
+        if (root.length() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Expression too long for a string: " + root.length());
+        }
+
+        StringBuilder builder = new StringBuilder((int) root.length());
+        try {
+            render(root, builder, topLevel);
+        } catch (IOException e) {
+            // StringBuilder does not throw IOExceptions
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Renders the given expression to the given output
+     *
+     * @param root the expression
+     * @param out the output
+     *
+     * @throws IOException if writing to the output fails
+     */
+    public static void render(Node root, Appendable out) throws IOException {
+        render(root, out, false);
+    }
+
+    /**
+     * Renders the given expression to the given output
+     *
+     * @param root the expression
+     * @param out the output
+     * @param topLevel whether the expression is the whole regular expression. A top level union does not need a group
+     *
+     * @throws IOException if writing to the output fails
+     */
+    public static void render(Node root, Appendable out, boolean topLevel) throws IOException {
+        // The stack contains nodes which still have to be rendered, literal strings which have to be written and
+        // characters which have to be escaped
+        Deque<Object> stack = new ArrayDeque<>();
+        if (topLevel && root instanceof Union) {
+            pushAlternatives(stack, (Union) root);
+        } else {
+            stack.push(root);
+        }
+        while (!stack.isEmpty()) {
+            Object top = stack.pop();
+            if (top instanceof String) {
+                out.append((String) top);
+            } else if (top instanceof Character) {
+                Characters.append(out, (Character) top, false);
+            } else if (top instanceof Symbol) {
+                Characters.append(out, ((Symbol) top).getCharacter(), false);
+            } else if (top instanceof CharClass) {
+                appendCharClass(out, (CharClass) top);
+            } else if (top instanceof Concat) {
+                Concat concat = (Concat) top;
+                stack.push(concat.getRight());
+                stack.push(concat.getLeft());
+            } else if (top instanceof Star) {
+                pushQuantified(stack, ((Star) top).getInner(), '*');
+            } else if (top instanceof Plus) {
+                pushQuantified(stack, ((Plus) top).getInner(), '+');
+            } else if (top instanceof Optional) {
+                pushQuantified(stack, ((Optional) top).getInner(), '?');
+            } else if (top instanceof Union) {
+                stack.push(")");
+                pushAlternatives(stack, (Union) top);
+                stack.push("(");
+            } else if (top == Empty.INSTANCE) {
+                out.append(Empty.EXPRESSION);
+            }
+            // Epsilon renders as the empty string
+        }
+    }
+
+    /**
+     * Schedules the alternatives of a union for rendering, separated by |. A character class of two characters is
+     * rendered as two alternatives
+     *
+     * @param stack the rendering stack
+     * @param union the union
+     */
+    private static void pushAlternatives(Deque<Object> stack, Union union) {
+        for (int i = union.memberCount() - 1; i >= 0; i--) {
+            Node member = union.getMember(i);
+            if (Union.rendersAsAlternatives(member)) {
+                CharClass pair = (CharClass) member;
+                stack.push(Union.second(pair));
+                stack.push("|");
+                stack.push(Union.first(pair));
+            } else {
+                stack.push(member);
+            }
+            if (i > 0) {
+                stack.push("|");
+            }
+        }
+    }
+
+    /**
+     * Renders a character class, writing ranges of at least three characters as first-last
+     *
+     * @param out the output
+     * @param charClass the character class
+     *
+     * @throws IOException if writing to the output fails
+     */
+    private static void appendCharClass(Appendable out, CharClass charClass) throws IOException {
+        out.append('[');
+        for (int i = 0; i < charClass.rangeCount(); i++) {
+            char first = charClass.getRangeStart(i);
+            char last = charClass.getRangeEnd(i);
+            Characters.append(out, first, true);
+            if (last - first > 1) {
+                out.append('-');
+            }
+            if (last != first) {
+                Characters.append(out, last, true);
+            }
+        }
+        out.append(']');
+    }
+
+    /**
+     * Schedules a quantified expression for rendering, adding a group if the expression is not atomic
+     *
+     * @param stack the rendering stack
+     * @param inner the quantified expression
+     * @param quantifier the quantifier
+     */
+    private static void pushQuantified(Deque<Object> stack, Node inner, char quantifier) {
+        if (inner.isAtomic()) {
+            stack.push(String.valueOf(quantifier));
+            stack.push(inner);
+        } else {
+            stack.push(")" + quantifier);
+            stack.push(inner);
+            stack.push("(");
+        }
+    }
+
+    private ExpressionRenderer() {
+    }
+}
@@ -0,0 +1,103 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents an immutable node of a regular expression
+ * <p>
+ * Nodes are created by a {@link NodeFactory} which hash-conses them: structurally equal nodes of the same factory are
+ * the same object, so subexpressions are shared instead of copied. Equality of nodes only compares the node itself and
+ * the identity of its children.
+ */
+public abstract class Node {
+
+    /**
+     * The structural hash of this node
+     */
+    private final int hash;
+
+    /**
+     * The length of the rendered expression
+     */
+    private final long length;
+
+    /**
+     * The ID of this node, assigned by the factory which interned it
+     */
+    private int nodeId;
+
+    /**
+     * Creates a node
+     *
+     * @param hash the structural hash of the node
+     * @param length the length of the rendered expression
+     */
+    Node(int hash, long length) {
+        this.hash = hash;
+        this.length = length;
+    }
+
+    /**
+     * Checks whether this node is atomic, i.e. if (R)Q is equivalent to RQ for a quantifier Q and the rendered node R
+     *
+     * @return true if the node is atomic
+     */
+    public abstract boolean isAtomic();
+
+    /**
+     * Checks whether this node has the same structure as the given node, comparing children by identity
+     *
+     * @param other the other node (of the same class)
+     *
+     * @return true if the nodes are structurally equal
+     */
+    abstract boolean sameStructure(Node other);
+
+    /**
+     * @return the length of the rendered expression
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return the ID of this node. Nodes created later by the same factory have higher IDs
+     */
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Sets the ID of this node
+     *
+     * @param id the ID
+     */
+    void setNodeId(int id) {
+        nodeId = id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || o.getClass() != getClass()) {
+            return false;
+        }
+        Node other = (Node) o;
+        return hash == other.hash && sameStructure(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Renders this node as a regular expression
+     *
+     * @return the regular expression
+     */
+    @Override
+    public String toString() {
+        return ExpressionRenderer.render(this);
+    }
+}
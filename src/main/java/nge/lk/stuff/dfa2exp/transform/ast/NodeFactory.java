@@ -0,0 +1,305 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates hash-consed regular expression nodes
+ * <p>
+ * Every structurally distinct node is created only once per factory. The factory applies the usual algebraic
+ * simplifications (neutral and absorbing elements, flattening and deduplication of unions) while creating nodes.
+ * <p>
+ * Factories are thread-safe. If nodes are created concurrently the assigned IDs, and with them the member order of
+ * unions, depend on the scheduling.
+ */
+public class NodeFactory {
+
+    /**
+     * Orders nodes by their ID
+     */
+    private static final Comparator<Node> BY_ID = Comparator.comparingInt(Node::getNodeId);
+
+    /**
+     * The interned nodes
+     */
+    private final ConcurrentMap<Node, Node> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * The ID of the next interned node
+     */
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Returns the interned version of the given node
+     *
+     * @param candidate the node
+     *
+     * @return the interned node which is structurally equal to the candidate
+     */
+    private Node intern(Node candidate) {
+        Node existing = nodes.get(candidate);
+        if (existing != null) {
+            return existing;
+        }
+        candidate.setNodeId(nextId.getAndIncrement());
+        existing = nodes.putIfAbsent(candidate, candidate);
+        return existing != null ? existing : candidate;
+    }
+
+    /**
+     * @return the empty word
+     */
+    public Node epsilon() {
+        return Epsilon.INSTANCE;
+    }
+
+    /**
+     * @return the empty language
+     */
+    public Node empty() {
+        return Empty.INSTANCE;
+    }
+
+    /**
+     * Creates a symbol
+     *
+     * @param character the character of the symbol
+     *
+     * @return the symbol node
+     */
+    public Node symbol(char character) {
+        return intern(new Symbol(character));
+    }
+
+    /**
+     * Creates the set of characters in the given range
+     *
+     * @param first the first character
+     * @param last the last character (inclusive)
+     *
+     * @return the character class, or a symbol if the range contains a single character
+     */
+    public Node range(char first, char last) {
+        if (first > last) {
+            throw new IllegalArgumentException("Invalid range: " + first + "-" + last);
+        }
+        return characters(new long[]{encodeRange(first, last)}, 1);
+    }
+
+    /**
+     * Creates the union of the given character ranges
+     *
+     * @param ranges the ranges, encoded by {@link #encodeRange(char, char)}. The array is sorted
+     * @param count the number of ranges to use
+     *
+     * @return the character class, a symbol if there is a single character or the empty language if there are no ranges
+     */
+    Node characters(long[] ranges, int count) {
+        if (count == 0) {
+            return Empty.INSTANCE;
+        }
+
+        // Sort by first character, then merge overlapping and adjacent ranges
+        Arrays.sort(ranges, 0, count);
+        char[] merged = new char[2 * count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            char first = (char) (ranges[i] >>> 16);
+            char last = (char) ranges[i];
+            if (size > 0 && first <= merged[size - 1] + 1) {
+                merged[size - 1] = (char) Math.max(merged[size - 1], last);
+            } else {
+                merged[size++] = first;
+                merged[size++] = last;
+            }
+        }
+
+        if (size == 2 && merged[0] == merged[1]) {
+            return symbol(merged[0]);
+        }
+        return intern(new CharClass(size == merged.length ? merged : Arrays.copyOf(merged, size)));
+    }
+
+    /**
+     * Encodes a character range so that encoded ranges are sorted by their first character
+     *
+     * @param first the first character
+     * @param last the last character (inclusive)
+     *
+     * @return the encoded range
+     */
+    static long encodeRange(char first, char last) {
+        return (long) first << 16 | last;
+    }
+
+    /**
+     * Creates the concatenation of two expressions
+     *
+     * @param left the left operand
+     * @param right the right operand
+     *
+     * @return the concatenation
+     */
+    public Node concat(Node left, Node right) {
+        if (left == Empty.INSTANCE || right == Empty.INSTANCE) {
+            return Empty.INSTANCE;
+        }
+        if (left == Epsilon.INSTANCE) {
+            return right;
+        }
+        if (right == Epsilon.INSTANCE) {
+            return left;
+        }
+        return intern(new Concat(left, right));
+    }
+
+    /**
+     * Creates the Kleene closure of an expression
+     *
+     * @param inner the expression which is repeated
+     *
+     * @return the closure
+     */
+    public Node star(Node inner) {
+        if (inner == Epsilon.INSTANCE || inner == Empty.INSTANCE) {
+            return Epsilon.INSTANCE;
+        }
+        if (inner instanceof Star) {
+            return inner;
+        }
+        if (inner instanceof Plus) {
+            return star(((Plus) inner).getInner());
+        }
+        if (inner instanceof Optional) {
+            return star(((Optional) inner).getInner());
+        }
+        return intern(new Star(inner));
+    }
+
+    /**
+     * Creates the repetition (one or more times) of an expression
+     *
+     * @param inner the expression which is repeated
+     *
+     * @return the repetition
+     */
+    public Node plus(Node inner) {
+        if (inner == Epsilon.INSTANCE || inner == Empty.INSTANCE) {
+            return inner;
+        }
+        if (inner instanceof Star || inner instanceof Plus) {
+            return inner;
+        }
+        if (inner instanceof Optional) {
+            return star(((Optional) inner).getInner());
+        }
+        return intern(new Plus(inner));
+    }
+
+    /**
+     * Creates an optional expression
+     *
+     * @param inner the optional expression
+     *
+     * @return the optional expression
+     */
+    public Node optional(Node inner) {
+        if (inner == Epsilon.INSTANCE || inner == Empty.INSTANCE) {
+            return Epsilon.INSTANCE;
+        }
+        if (inner instanceof Star || inner instanceof Optional) {
+            return inner;
+        }
+        if (inner instanceof Plus) {
+            return star(((Plus) inner).getInner());
+        }
+        return intern(new Optional(inner));
+    }
+
+    /**
+     * Creates the union of the given expressions. Nested unions are flattened, symbols and character classes are merged
+     * and duplicates are removed
+     *
+     * @param alternatives the expressions
+     *
+     * @return the union
+     */
+    public Node union(Collection<Node> alternatives) {
+        return union(alternatives.toArray(new Node[0]), alternatives.size());
+    }
+
+    /**
+     * Creates the union of the first {@code count} given expressions. Nested unions are flattened, symbols and character
+     * classes are merged and duplicates are removed. The array is not modified
+     *
+     * @param alternatives the expressions
+     * @param count the number of expressions to use
+     *
+     * @return the union
+     */
+    public Node union(Node[] alternatives, int count) {
+        int memberCount = 0;
+        for (int i = 0; i < count; i++) {
+            Node alternative = alternatives[i];
+            memberCount += alternative instanceof Union ? ((Union) alternative).memberCount() : 1;
+        }
+
+        // Symbols and character classes are collected as ranges and merged into a single member
+        Node[] members = new Node[memberCount + 1];
+        int size = 0;
+        long[] ranges = null;
+        int rangeCount = 0;
+        for (int i = 0; i < count; i++) {
+            Node alternative = alternatives[i];
+            int nested = alternative instanceof Union ? ((Union) alternative).memberCount() : 1;
+            for (int j = 0; j < nested; j++) {
+                Node member = alternative instanceof Union ? ((Union) alternative).getMember(j) : alternative;
+                if (member instanceof Symbol) {
+                    if (ranges == null) {
+                        ranges = new long[8];
+                    } else if (rangeCount == ranges.length) {
+                        ranges = Arrays.copyOf(ranges, 2 * rangeCount);
+                    }
+                    char c = ((Symbol) member).getCharacter();
+                    ranges[rangeCount++] = encodeRange(c, c);
+                } else if (member instanceof CharClass) {
+                    CharClass charClass = (CharClass) member;
+                    if (ranges == null) {
+                        ranges = new long[Math.max(8, charClass.rangeCount())];
+                    } else if (rangeCount + charClass.rangeCount() > ranges.length) {
+                        ranges = Arrays.copyOf(ranges, 2 * (rangeCount + charClass.rangeCount()));
+                    }
+                    for (int k = 0; k < charClass.rangeCount(); k++) {
+                        ranges[rangeCount++] = encodeRange(charClass.getRangeStart(k), charClass.getRangeEnd(k));
+                    }
+                } else if (member != Empty.INSTANCE) {
+                    members[size++] = member;
+                }
+            }
+        }
+        if (rangeCount > 0) {
+            members[size++] = characters(ranges, rangeCount);
+        }
+
+        // Sort by ID to obtain a canonical member order, then remove duplicates
+        Arrays.sort(members, 0, size, BY_ID);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || members[unique - 1] != members[i]) {
+                members[unique++] = members[i];
+            }
+        }
+
+        if (unique == 0) {
+            return Empty.INSTANCE;
+        }
+        if (unique == 1) {
+            return members[0];
+        }
+        return intern(new Union(unique == members.length ? members : Arrays.copyOf(members, unique)));
+    }
+}
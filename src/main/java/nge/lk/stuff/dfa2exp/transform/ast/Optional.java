@@ -0,0 +1,39 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents an expression which may be absent (the union of the expression and the empty word)
+ */
+public final class Optional extends Node {
+
+    /**
+     * The optional expression
+     */
+    private final Node inner;
+
+    /**
+     * Creates an optional node
+     *
+     * @param inner the optional expression
+     */
+    Optional(Node inner) {
+        super(31 * 19 + inner.hashCode(), inner.length() + (inner.isAtomic() ? 1 : 3));
+        this.inner = inner;
+    }
+
+    /**
+     * @return the optional expression
+     */
+    public Node getInner() {
+        return inner;
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return false;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        return inner == ((Optional) other).inner;
+    }
+}
@@ -0,0 +1,39 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents the Kleene closure of an expression
+ */
+public final class Star extends Node {
+
+    /**
+     * The expression which is repeated
+     */
+    private final Node inner;
+
+    /**
+     * Creates a closure node
+     *
+     * @param inner the expression which is repeated
+     */
+    Star(Node inner) {
+        super(31 * 7 + inner.hashCode(), inner.length() + (inner.isAtomic() ? 1 : 3));
+        this.inner = inner;
+    }
+
+    /**
+     * @return the expression which is repeated
+     */
+    public Node getInner() {
+        return inner;
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return false;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        return inner == ((Star) other).inner;
+    }
+}
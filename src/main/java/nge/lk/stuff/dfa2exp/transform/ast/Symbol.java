@@ -0,0 +1,39 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents a single character of the alphabet
+ */
+public final class Symbol extends Node {
+
+    /**
+     * The character
+     */
+    private final char character;
+
+    /**
+     * Creates a symbol node
+     *
+     * @param character the character
+     */
+    Symbol(char character) {
+        super(character, Characters.length(character, false));
+        this.character = character;
+    }
+
+    /**
+     * @return the character
+     */
+    public char getCharacter() {
+        return character;
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return true;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        return character == ((Symbol) other).character;
+    }
+}
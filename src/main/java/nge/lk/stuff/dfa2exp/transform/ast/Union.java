@@ -0,0 +1,127 @@
+package nge.lk.stuff.dfa2exp.transform.ast;
+
+/**
+ * Represents the union (disjunction) of at least two expressions
+ * <p>
+ * Unions are rendered in parenthesis. Symbols and character classes are always combined into a single character class
+ * member by the {@link NodeFactory}, so a union contains at least one member which is neither. A character class of
+ * two characters is rendered as two alternatives, because a|b is shorter than [ab].
+ */
+public final class Union extends Node {
+
+    /**
+     * The members of this union, ordered by node ID
+     */
+    private final Node[] members;
+
+    /**
+     * Creates a union node
+     *
+     * @param members the members, ordered by node ID. The array is not copied
+     */
+    Union(Node[] members) {
+        super(hash(members), length(members));
+        this.members = members;
+    }
+
+    /**
+     * Computes the structural hash of a union
+     *
+     * @param members the members
+     *
+     * @return the hash
+     */
+    private static int hash(Node[] members) {
+        int hash = 5;
+        for (Node member : members) {
+            hash = 31 * hash + member.hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the rendered length of a union
+     *
+     * @param members the members
+     *
+     * @return the length
+     */
+    private static long length(Node[] members) {
+        long length = members.length + 1; // parenthesis and separators
+        for (Node member : members) {
+            if (rendersAsAlternatives(member)) {
+                CharClass pair = (CharClass) member;
+                length += Characters.length(first(pair), false) + 1 + Characters.length(second(pair), false);
+            } else {
+                length += member.length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Checks whether a member is rendered as two alternatives instead of a character class
+     *
+     * @param member the member
+     *
+     * @return true if the member is a character class of two characters
+     */
+    static boolean rendersAsAlternatives(Node member) {
+        return member instanceof CharClass && ((CharClass) member).characterCount() == 2;
+    }
+
+    /**
+     * @param pair a character class of two characters
+     *
+     * @return the first character of the class
+     */
+    static char first(CharClass pair) {
+        return pair.getRangeStart(0);
+    }
+
+    /**
+     * @param pair a character class of two characters
+     *
+     * @return the second character of the class
+     */
+    static char second(CharClass pair) {
+        return pair.rangeCount() == 1 ? pair.getRangeEnd(0) : pair.getRangeStart(1);
+    }
+
+    /**
+     * @return the number of members
+     */
+    public int memberCount() {
+        return members.length;
+    }
+
+    /**
+     * Returns the member with the given index
+     *
+     * @param i the index
+     *
+     * @return the member
+     */
+    public Node getMember(int i) {
+        return members[i];
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return true;
+    }
+
+    @Override
+    boolean sameStructure(Node other) {
+        Node[] otherMembers = ((Union) other).members;
+        if (members.length != otherMembers.length) {
+            return false;
+        }
+        for (int i = 0; i < members.length; i++) {
+            if (members[i] != otherMembers[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
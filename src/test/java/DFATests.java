@@ -1,13 +1,83 @@
+import nge.lk.stuff.dfa2exp.BatchGenerator;
+import nge.lk.stuff.dfa2exp.ExpressionServer;
+import nge.lk.stuff.dfa2exp.compile.CompiledMatcher;
+import nge.lk.stuff.dfa2exp.compile.MatcherCompiler;
+import nge.lk.stuff.dfa2exp.io.DFAReader;
+import nge.lk.stuff.dfa2exp.io.DFAWriter;
+import nge.lk.stuff.dfa2exp.io.DotFormat;
+import nge.lk.stuff.dfa2exp.io.ExpressionStore;
+import nge.lk.stuff.dfa2exp.io.JflapFormat;
+import nge.lk.stuff.dfa2exp.io.JsonFormat;
+import nge.lk.stuff.dfa2exp.io.LabeledDFA;
+import nge.lk.stuff.dfa2exp.model.Alphabet;
 import nge.lk.stuff.dfa2exp.model.DFA;
+import nge.lk.stuff.dfa2exp.model.DFAFingerprint;
+import nge.lk.stuff.dfa2exp.model.DFAMatcher;
+import nge.lk.stuff.dfa2exp.model.DFAMinimizer;
+import nge.lk.stuff.dfa2exp.model.DFATrimmer;
+import nge.lk.stuff.dfa2exp.model.DivisibilityAutomata;
 import nge.lk.stuff.dfa2exp.model.State;
+import nge.lk.stuff.dfa2exp.transform.EliminationOrder;
 import nge.lk.stuff.dfa2exp.transform.EquationSystem;
+import nge.lk.stuff.dfa2exp.transform.ExpressionCache;
 import nge.lk.stuff.dfa2exp.transform.ExpressionOptimizer;
+import nge.lk.stuff.dfa2exp.transform.ExpressionTreeOptimizer;
+import nge.lk.stuff.dfa2exp.transform.IncrementalSolver;
+import nge.lk.stuff.dfa2exp.transform.SolveLimitExceededException;
+import nge.lk.stuff.dfa2exp.transform.SolveOptions;
+import nge.lk.stuff.dfa2exp.transform.SolverListener;
+import nge.lk.stuff.dfa2exp.transform.ast.ExpressionParser;
+import nge.lk.stuff.dfa2exp.transform.ast.Node;
+import nge.lk.stuff.dfa2exp.transform.ast.NodeFactory;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class DFATests {
 
@@ -24,6 +94,22 @@ public class DFATests {
         Assertions.assertTrue(dfa.isComplete(), "DFA is not complete");
     }
 
+    @Test
+    public void testDFAIndices() {
+        DFA dfa = new DFA(2, 2);
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.createTransition(0, 2, 1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.createTransition(0, 0, 7));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.createTransition(2, 0, 1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.getTransition(0, -1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.makeFinal(2));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.setFinal(-1, true));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.setTransition(0, 0, 2));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.setTransition(0, 2, 1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> dfa.setTransition(2, 0, -1));
+        Assertions.assertEquals(-1, dfa.getTransition(1, 0));
+        Assertions.assertEquals(-1, dfa.getTransition(0, 1));
+    }
+
     @Test
     public void testDivisionAutomataWithOptimization() {
         Random r = new Random();
@@ -72,6 +158,912 @@ public class DFATests {
         }
     }
 
+    @Test
+    public void testTreeOptimizer() {
+        String fullAlphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        for (int base = Character.MIN_RADIX; base <= Character.MAX_RADIX; base++) {
+            for (int div = 2; div < 8; div++) {
+                String alphabet = fullAlphabet.substring(0, base);
+                String expr = new EquationSystem(DivisibilityAutomata.divisibleBy(base, div), alphabet).solve();
+                String legacy = new ExpressionOptimizer(expr).optimize();
+
+                // From the rendered solution through the parser, and from the solved tree without rendering
+                String parsed = new ExpressionTreeOptimizer(expr).optimize();
+                EquationSystem system = new EquationSystem(DivisibilityAutomata.divisibleBy(base, div), alphabet);
+                String solved = new ExpressionTreeOptimizer(system, new SolveOptions()).optimize();
+
+                for (String optimized : Arrays.asList(parsed, solved)) {
+                    assertAcceptsMultiples(optimized, base, div);
+                    Assertions.assertTrue(optimized.length() <= legacy.length(), String.format("(BASE, DIV) = (%d, %d): %s is longer than %s", base, div, optimized, legacy));
+                    Matcher expected = Pattern.compile(legacy).matcher("");
+                    Matcher actual = Pattern.compile(optimized).matcher("");
+                    for (int num = 0; num < 200; num++) {
+                        String word = Integer.toString(num, base).toUpperCase();
+                        Assertions.assertEquals(expected.reset(word).matches(), actual.reset(word).matches(), String.format("(BASE, DIV) = (%d, %d): Expressions differ for %s", base, div, word));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMinimization() {
+        String fullAlphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+        // n is divisible by 10 in base 10 iff its last digit is 0, by 4 iff its last two digits are
+        Assertions.assertEquals(2, DFAMinimizer.minimize(DivisibilityAutomata.divisibleBy(10, 10)).stateCount());
+        Assertions.assertEquals(3, DFAMinimizer.minimize(DivisibilityAutomata.divisibleBy(10, 4)).stateCount());
+        Assertions.assertEquals(7, DFAMinimizer.minimize(DivisibilityAutomata.divisibleBy(10, 7)).stateCount());
+
+        for (int base = Character.MIN_RADIX; base <= Character.MAX_RADIX; base++) {
+            for (int div = 2; div < 8; div++) {
+                EquationSystem system = new EquationSystem(DivisibilityAutomata.divisibleBy(base, div), fullAlphabet.substring(0, base), true);
+                assertAcceptsMultiples(system.solve(), base, div);
+            }
+        }
+    }
+
+    @Test
+    public void testEliminationOrders() {
+        String fullAlphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        List<Supplier<EliminationOrder>> orders = Arrays.asList(EliminationOrder::reverseIndex, EliminationOrder::minDegreeProduct, EliminationOrder::dynamicDegreeProduct, EliminationOrder::minWeight);
+        for (int order = 0; order < orders.size(); order++) {
+            for (int base = Character.MIN_RADIX; base <= Character.MAX_RADIX; base++) {
+                for (int div = 2; div < 8; div++) {
+                    EquationSystem system = new EquationSystem(DivisibilityAutomata.divisibleBy(base, div), fullAlphabet.substring(0, base));
+                    system.setEliminationOrder(orders.get(order).get());
+                    assertAcceptsMultiples(system.solve(), base, div);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTermMap() throws ReflectiveOperationException {
+        // TermMap is internal to the solver, so it is accessed reflectively and compared with a HashMap
+        Class<?> type = Class.forName("nge.lk.stuff.dfa2exp.transform.TermMap");
+        Constructor<?> constructor = type.getDeclaredConstructor(int.class);
+        Method add = type.getDeclaredMethod("add", int.class, Node.class);
+        Method remove = type.getDeclaredMethod("remove", int.class);
+        Method get = type.getDeclaredMethod("get", int.class);
+        Method merge = type.getDeclaredMethod("merge", NodeFactory.class);
+        Method copy = type.getDeclaredMethod("copy");
+        Method size = type.getDeclaredMethod("size");
+        AccessibleObject.setAccessible(new AccessibleObject[]{constructor, add, remove, get, merge, copy, size}, true);
+
+        Random random = new Random(6);
+        NodeFactory factory = new NodeFactory();
+        Node[] prefixes = new Node[8];
+        Arrays.setAll(prefixes, i -> factory.symbol((char) ('a' + i)));
+        Object map = constructor.newInstance(1);
+        Map<Integer, Node> expected = new HashMap<>();
+        Map<Integer, List<Node>> pending = new HashMap<>();
+        for (int step = 0; step < 5000; step++) {
+            // Few keys keep the table dense, so probe sequences collide and removals shift entries back
+            int key = random.nextInt(48) - 1;
+            int action = random.nextInt(10);
+            if (action < 5) {
+                // New keys can make the table grow while other keys have prefixes waiting to be merged
+                Node prefix = prefixes[random.nextInt(prefixes.length)];
+                add.invoke(map, key, prefix);
+                if (expected.containsKey(key)) {
+                    pending.computeIfAbsent(key, k -> new ArrayList<>(Collections.singletonList(expected.get(k)))).add(prefix);
+                } else {
+                    expected.put(key, prefix);
+                }
+            } else {
+                // Terms are merged before they are removed or copied
+                merge.invoke(map, factory);
+                pending.forEach((k, merged) -> expected.put(k, factory.union(merged.toArray(new Node[0]), merged.size())));
+                pending.clear();
+                if (action < 9) {
+                    Assertions.assertSame(expected.remove(key), remove.invoke(map, key));
+                } else {
+                    // The copy continues, removing from the original must not affect it
+                    Object original = map;
+                    map = copy.invoke(original);
+                    remove.invoke(original, key);
+                    Assertions.assertNull(get.invoke(original, key));
+                }
+            }
+
+            Assertions.assertEquals(expected.size(), size.invoke(map));
+            for (int k = -1; k < 47; k++) {
+                Assertions.assertSame(expected.get(k), get.invoke(map, k), "Key " + k + " in step " + step);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSolve() {
+        for (int div = 2; div < 32; div++) {
+            EquationSystem system = new EquationSystem(DivisibilityAutomata.divisibleBy(2, div), "01", true);
+            system.setEliminationOrder(EliminationOrder.minWeight());
+            system.setParallelism(4);
+            assertAcceptsMultiples(system.solve(), 2, div);
+        }
+    }
+
+    @Test
+    public void testDivisibilityAutomata() {
+        for (int base = 2; base <= 36; base++) {
+            for (int div = 1; div <= 40; div++) {
+                DFA actual = DivisibilityAutomata.divisibleBy(base, BigInteger.valueOf(div));
+                Assertions.assertEquals(div, actual.stateCount());
+                Assertions.assertTrue(actual.isComplete());
+                for (int q = 0; q < div; q++) {
+                    // State q is reached by the numbers with remainder q
+                    Assertions.assertEquals(q == 0, actual.isFinal(q));
+                    for (int e = 0; e < base; e++) {
+                        Assertions.assertEquals((q * base + e) % div, actual.getTransition(q, e));
+                    }
+                }
+            }
+        }
+
+        // Numbers which are 1 or 4 modulo 5
+        BitSet remainders = new BitSet();
+        remainders.set(1);
+        remainders.set(4);
+        DFA dfa = DivisibilityAutomata.remainderIn(10, 5, remainders);
+        for (int i = 0; i < 1000; i++) {
+            State s = dfa.createRun();
+            for (char c : String.valueOf(i).toCharArray()) {
+                s = s.takeTransition(c - '0');
+            }
+            Assertions.assertEquals(i % 5 == 1 || i % 5 == 4, s.isFinal());
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DivisibilityAutomata.divisibleBy(10, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DivisibilityAutomata.divisibleBy(10, Long.MAX_VALUE));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DivisibilityAutomata.divisibleBy(10, BigInteger.ONE.shiftLeft(100)));
+    }
+
+    @Test
+    public void testMatcher() {
+        String fullAlphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        Random rng = new Random(42);
+        for (int base = 2; base <= 16; base += 7) {
+            for (int div = 1; div < 8; div++) {
+                DFA dfa = DivisibilityAutomata.divisibleBy(base, div);
+                DFAMatcher matcher = new DFAMatcher(dfa, fullAlphabet.substring(0, base));
+                Pattern pattern = Pattern.compile(new EquationSystem(dfa, fullAlphabet.substring(0, base), true).solve());
+                for (int i = 0; i < 1000; i++) {
+                    int number = rng.nextInt(100000);
+                    String input = Integer.toString(number, base).toUpperCase();
+                    Assertions.assertEquals(number % div == 0, matcher.matches(input));
+                    Assertions.assertEquals(pattern.matcher(input).matches(), matcher.matches(input));
+                    Assertions.assertEquals(number % div == 0, matcher.matches(input.getBytes(StandardCharsets.US_ASCII)));
+                }
+            }
+        }
+
+        DFAMatcher matcher = new DFAMatcher(DivisibilityAutomata.divisibleBy(10, 3), "0123456789");
+        Assertions.assertFalse(matcher.matches("12a"));
+        Assertions.assertFalse(matcher.matches("12\u00e9"));
+        Assertions.assertFalse(matcher.matches(new byte[]{'1', (byte) 0xE9}));
+        Assertions.assertTrue(matcher.matches("x123x", 1, 4));
+        Assertions.assertTrue(matcher.matches(new byte[]{'x', '3', '3'}, 1, 2));
+        Assertions.assertEquals(7, matcher.symbolOf('7'));
+        Assertions.assertEquals(-1, matcher.symbolOf('A'));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new DFAMatcher(new DFA(1, 2), "aa"));
+    }
+
+    @Test
+    public void testCompiledMatcher() {
+        String fullAlphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        Random rng = new Random(42);
+        for (int base = 2; base <= 36; base += 17) {
+            for (int div = 1; div < 30; div += 4) {
+                DFA dfa = DivisibilityAutomata.divisibleBy(base, div);
+                CompiledMatcher compiled = MatcherCompiler.compile(dfa, fullAlphabet.substring(0, base));
+                for (int i = 0; i < 1000; i++) {
+                    int number = rng.nextInt(100000);
+                    String input = Integer.toString(number, base).toUpperCase();
+                    Assertions.assertEquals(number % div == 0, compiled.matches(input));
+                }
+                Assertions.assertTrue(compiled.matches(""));
+                Assertions.assertFalse(compiled.matches("1-"));
+            }
+        }
+
+        // Sparse alphabet (lookupswitch) and missing transitions: (ab|~)*
+        DFA dfa = new DFA(2, 3);
+        dfa.makeFinal(0);
+        dfa.createTransition(0, 0, 1);
+        dfa.createTransition(1, 1, 0);
+        dfa.createTransition(0, 2, 0);
+        CompiledMatcher compiled = MatcherCompiler.compile(dfa, "aZ~");
+        DFAMatcher matcher = new DFAMatcher(dfa, "aZ~");
+        for (String input : Arrays.asList("", "aZ", "~aZ~~", "a", "Z", "aZa", "aZ~a~", "b", "\u20ac")) {
+            Assertions.assertEquals(matcher.matches(input), compiled.matches(input), input);
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MatcherCompiler.compile(DivisibilityAutomata.divisibleBy(36, 5000), fullAlphabet));
+    }
+
+    @Test
+    public void testCharacterRanges() {
+        // Identifiers over the byte alphabet: [a-z][a-z0-9_]*
+        DFA identifiers = new DFA(2, 256);
+        identifiers.makeFinal(1);
+        for (char c = 'a'; c <= 'z'; c++) {
+            identifiers.createTransition(0, c, 1);
+            identifiers.createTransition(1, c, 1);
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            identifiers.createTransition(1, c, 1);
+        }
+        identifiers.createTransition(1, '_', 1);
+
+        String expression = new EquationSystem(identifiers, Alphabet.bytes()).solve();
+        Assertions.assertEquals("[a-z][0-9_a-z]*", expression);
+        Assertions.assertEquals("[a-z][0-9_a-z]*", new ExpressionTreeOptimizer(expression).optimize());
+
+        // An alphabet of metacharacters: every word of even length
+        String meta = "()[]|*+?.^$" + "{}-\\&\n";
+        DFA even = new DFA(2, meta.length());
+        even.makeFinal(0);
+        for (int e = 0; e < meta.length(); e++) {
+            even.createTransition(0, e, 1);
+            even.createTransition(1, e, 0);
+        }
+        expression = new EquationSystem(even, Alphabet.of(meta)).solve();
+        String optimized = new ExpressionTreeOptimizer(expression).optimize();
+        Random rng = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int j = rng.nextInt(8); j > 0; j--) {
+                input.append(meta.charAt(rng.nextInt(meta.length())));
+            }
+            boolean accepted = input.length() % 2 == 0;
+            Assertions.assertEquals(accepted, Pattern.matches(expression, input), expression);
+            Assertions.assertEquals(accepted, Pattern.matches(optimized, input), optimized);
+        }
+
+        // Parsing and rendering ranges and escapes
+        NodeFactory factory = new NodeFactory();
+        Assertions.assertEquals("[0-9A-F]x\\.\\x01[ab]", ExpressionParser.parse("[0123456789ABCDEF]x\\.\\x01[ba]", factory).toString());
+        Assertions.assertEquals("(a\\||[\\-.0|])", ExpressionParser.parse("(-|\\||.|0|a\\|)", factory).toString());
+        Assertions.assertEquals("(ab|0|9)", ExpressionParser.parse("(0|ab|9)", factory).toString());
+        Assertions.assertSame(factory.range('a', 'c'), ExpressionParser.parse("[a-bc]", factory));
+        Assertions.assertSame(factory.symbol('-'), ExpressionParser.parse("[-]", factory));
+        Assertions.assertEquals(Alphabet.range('a', 'c').toString(), "abc");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Alphabet.of("aba"));
+    }
+
+    @Test
+    public void testTrimming() {
+        // Base 10 division by 3 with an unreachable state (3) and a dead state (4) that is entered on 9
+        DFA dfa = new DFA(5, 10);
+        dfa.makeFinal(0);
+        for (int q = 0; q < 3; q++) {
+            for (int e = 0; e < 9; e++) {
+                dfa.createTransition(q, e, (q * 10 + e) % 3);
+            }
+            dfa.createTransition(q, 9, 4);
+        }
+        for (int e = 0; e < 10; e++) {
+            dfa.createTransition(3, e, 0);
+            dfa.createTransition(4, e, 4);
+        }
+
+        DFA trimmed = DFATrimmer.trim(dfa);
+        Assertions.assertEquals(3, trimmed.stateCount());
+        DFAMatcher expected = new DFAMatcher(dfa, "0123456789");
+        DFAMatcher actual = new DFAMatcher(trimmed, "0123456789");
+        Pattern pattern = Pattern.compile(new EquationSystem(dfa, "0123456789").solve());
+        for (int i = 0; i < 10000; i++) {
+            String input = String.valueOf(i);
+            Assertions.assertEquals(expected.matches(input), actual.matches(input));
+            Assertions.assertEquals(expected.matches(input), pattern.matcher(input).matches());
+        }
+
+        // Nothing to trim
+        DFA complete = DivisibilityAutomata.divisibleBy(10, 7);
+        Assertions.assertSame(complete, DFATrimmer.trim(complete));
+
+        // Empty language
+        DFA empty = new DFA(3, 2);
+        empty.createTransition(0, 0, 1);
+        empty.makeFinal(2);
+        Assertions.assertEquals(1, DFATrimmer.trim(empty).stateCount());
+        Assertions.assertFalse(Pattern.compile(new EquationSystem(empty, "ab").solve()).matcher("").matches());
+    }
+
+    @Test
+    public void testSolveLimits() {
+        String alphabet = "0123456789";
+        SolveOptions generous = new SolveOptions();
+        generous.setMaxExpressionLength(1_000_000);
+        generous.setMaxTotalWeight(10_000_000);
+        generous.setTimeLimit(1, TimeUnit.MINUTES);
+        Assertions.assertEquals(new EquationSystem(DivisibilityAutomata.divisibleBy(10, 7), alphabet).solve(),
+                new EquationSystem(DivisibilityAutomata.divisibleBy(10, 7), alphabet).solve(generous));
+
+        SolveOptions length = new SolveOptions();
+        length.setMaxExpressionLength(10_000);
+        SolveLimitExceededException e = Assertions.assertThrows(SolveLimitExceededException.class,
+                () -> new EquationSystem(DivisibilityAutomata.divisibleBy(10, 13), alphabet).solve(length));
+        Assertions.assertEquals(SolveLimitExceededException.Limit.EXPRESSION_LENGTH, e.getLimit());
+        Assertions.assertTrue(e.getStatistics().getMaxExpressionLength() > 10_000);
+        Assertions.assertEquals(13, e.getStatistics().getEliminatedEquations() + e.getStatistics().getRemainingEquations());
+
+        SolveOptions weight = new SolveOptions();
+        weight.setMaxTotalWeight(1_000);
+        e = Assertions.assertThrows(SolveLimitExceededException.class,
+                () -> new EquationSystem(DivisibilityAutomata.divisibleBy(10, 13), alphabet).solve(weight));
+        Assertions.assertEquals(SolveLimitExceededException.Limit.TOTAL_WEIGHT, e.getLimit());
+        Assertions.assertTrue(e.getStatistics().getTotalWeight() > 1_000);
+
+        SolveOptions time = new SolveOptions();
+        time.setTimeLimit(0, TimeUnit.NANOSECONDS);
+        e = Assertions.assertThrows(SolveLimitExceededException.class,
+                () -> new EquationSystem(DivisibilityAutomata.divisibleBy(10, 13), alphabet).solve(time));
+        Assertions.assertEquals(SolveLimitExceededException.Limit.TIME, e.getLimit());
+        Assertions.assertEquals(1, e.getStatistics().getEliminatedEquations());
+
+        // The final expression is checked as well
+        SolveOptions tiny = new SolveOptions();
+        tiny.setMaxExpressionLength(5);
+        e = Assertions.assertThrows(SolveLimitExceededException.class,
+                () -> new EquationSystem(DivisibilityAutomata.divisibleBy(10, 2), alphabet, true).solve(tiny));
+        Assertions.assertEquals(SolveLimitExceededException.Limit.EXPRESSION_LENGTH, e.getLimit());
+    }
+
+    @Test
+    public void testAsyncSolve() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Integer> progress = new CopyOnWriteArrayList<>();
+            EquationSystem system = new EquationSystem(DivisibilityAutomata.divisibleBy(10, 7), "0123456789");
+            String expression = system.solveAsync(executor, new SolveOptions(), progress::add).get(1, TimeUnit.MINUTES);
+            Assertions.assertEquals(new EquationSystem(DivisibilityAutomata.divisibleBy(10, 7), "0123456789").solve(), expression);
+            Assertions.assertEquals(Arrays.asList(5, 4, 3, 2, 1, 0), progress);
+
+            // Cancel from the progress callback, the solver stops after the current round
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch cancelled = new CountDownLatch(1);
+            AtomicInteger rounds = new AtomicInteger();
+            CompletableFuture<String> future = new EquationSystem(DivisibilityAutomata.divisibleBy(10, 13), "0123456789")
+                    .solveAsync(executor, new SolveOptions(), remaining -> {
+                        rounds.incrementAndGet();
+                        started.countDown();
+                        try {
+                            cancelled.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+            started.await();
+            future.cancel(true);
+            cancelled.countDown();
+            Assertions.assertThrows(CancellationException.class, future::join);
+
+            // The executor is free again and the solver did not continue
+            executor.submit(() -> null).get(1, TimeUnit.MINUTES);
+            Assertions.assertEquals(1, rounds.get());
+
+            // Limits complete the future exceptionally
+            SolveOptions options = new SolveOptions();
+            options.setMaxTotalWeight(100);
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> new EquationSystem(DivisibilityAutomata.divisibleBy(10, 13), "0123456789").solveAsync(executor, options, remaining -> {
+                    }).get(1, TimeUnit.MINUTES));
+            Assertions.assertTrue(e.getCause() instanceof SolveLimitExceededException);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testListener() {
+        List<String> events = new ArrayList<>();
+        long[] lengths = new long[1];
+        List<int[]> optimizations = new ArrayList<>();
+        SolverListener listener = new SolverListener() {
+            @Override
+            public void solveStarted(int equationCount) {
+                events.add("start " + equationCount);
+            }
+
+            @Override
+            public void ardenApplied(int equationId, int termCount) {
+                events.add("arden");
+            }
+
+            @Override
+            public void substituted(int targetId, int valueId, int termCount) {
+                events.add("substitute");
+            }
+
+            @Override
+            public void roundCompleted(int equationId, int remaining, long weight, long nanos) {
+                events.add("round " + remaining);
+            }
+
+            @Override
+            public void solveCompleted(long expressionLength, long nanos) {
+                lengths[0] = expressionLength;
+            }
+
+            @Override
+            public void optimizationCompleted(long inputLength, long outputLength, int maxDepth, int rewrites, long nanos) {
+                optimizations.add(new int[]{(int) inputLength, (int) outputLength, maxDepth, rewrites});
+            }
+        };
+
+        EquationSystem system = new EquationSystem(DivisibilityAutomata.divisibleBy(10, 7), "0123456789");
+        system.setListener(listener);
+        String expression = system.solve();
+        Assertions.assertEquals(expression.length(), lengths[0]);
+        Assertions.assertEquals("start 7", events.get(0));
+        Assertions.assertEquals(Arrays.asList("round 5", "round 4", "round 3", "round 2", "round 1", "round 0"),
+                events.stream().filter(e -> e.startsWith("round")).collect(Collectors.toList()));
+        Assertions.assertTrue(events.contains("arden"));
+        Assertions.assertTrue(events.contains("substitute"));
+
+        // abcd|aefd|aghd -> a(bc|ef|gh)d
+        String input = "(abcd|aefd|aghd)*";
+        ExpressionTreeOptimizer treeOptimizer = new ExpressionTreeOptimizer(input);
+        treeOptimizer.setListener(listener);
+        ExpressionOptimizer optimizer = new ExpressionOptimizer(input);
+        optimizer.setListener(listener);
+        int[] expectedLengths = {treeOptimizer.optimize().length(), optimizer.optimize().length()};
+        Assertions.assertEquals(2, optimizations.size());
+        for (int i = 0; i < 2; i++) {
+            int[] metrics = optimizations.get(i);
+            Assertions.assertEquals(input.length(), metrics[0]);
+            Assertions.assertEquals(expectedLengths[i], metrics[1]);
+            Assertions.assertTrue(metrics[2] > 1);
+            Assertions.assertTrue(metrics[3] > 0);
+        }
+    }
+
+    @Test
+    public void testExpressionCache() {
+        // Division by 7 with the states numbered in reverse (except for the initial state) and an unreachable state
+        DFA permuted = new DFA(8, 10);
+        permuted.makeFinal(0);
+        for (int q = 0; q < 7; q++) {
+            for (int e = 0; e < 10; e++) {
+                int target = (q * 10 + e) % 7;
+                permuted.createTransition(q == 0 ? 0 : 7 - q, e, target == 0 ? 0 : 7 - target);
+            }
+        }
+        permuted.createTransition(7, 0, 7);
+        DFA original = DivisibilityAutomata.divisibleBy(10, 7);
+        Assertions.assertEquals(DFAFingerprint.of(original), DFAFingerprint.of(permuted));
+        Assertions.assertEquals(DFAFingerprint.of(original).hashCode(), DFAFingerprint.of(permuted).hashCode());
+        Assertions.assertEquals(7, DFAFingerprint.of(permuted).stateCount());
+        Assertions.assertNotEquals(DFAFingerprint.of(original), DFAFingerprint.of(DivisibilityAutomata.divisibleBy(10, 9)));
+        Assertions.assertNotEquals(DFAFingerprint.of(original), DFAFingerprint.of(DivisibilityAutomata.divisibleBy(9, 7)));
+
+        int[] computations = new int[1];
+        BiFunction<DFA, CharSequence, String> pipeline = (dfa, alphabet) -> {
+            computations[0]++;
+            return new EquationSystem(dfa, alphabet, true).solve();
+        };
+        // Room for two entries of division by 7
+        long entryWeight = new EquationSystem(original, "0123456789", true).solve().length() + 10
+                + 2L * DFAFingerprint.of(original).encodedLength();
+        ExpressionCache cache = new ExpressionCache(2 * entryWeight);
+        String expression = cache.get(original, "0123456789", pipeline);
+        Assertions.assertSame(expression, cache.get(permuted, "0123456789ABC", pipeline));
+        Assertions.assertEquals(1, computations[0]);
+        Assertions.assertEquals(1, cache.hitCount());
+        Assertions.assertEquals(1, cache.missCount());
+        Assertions.assertEquals(entryWeight, cache.weight());
+
+        // A different alphabet is a different key
+        Assertions.assertNotEquals(expression, cache.get(original, "abcdefghij", pipeline));
+        Assertions.assertEquals(2, computations[0]);
+
+        // The least recently used entry is evicted
+        cache.get(DivisibilityAutomata.divisibleBy(10, 3), "0123456789", pipeline);
+        Assertions.assertEquals(3, computations[0]);
+        cache.get(original, "0123456789", pipeline);
+        Assertions.assertEquals(4, computations[0]);
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertTrue(cache.weight() <= 2 * entryWeight);
+
+        // Results which exceed the maximum weight are not cached
+        ExpressionCache small = new ExpressionCache(10);
+        small.get(original, "0123456789", pipeline);
+        Assertions.assertEquals(0, small.size());
+
+        // The fingerprint of a large automaton counts even if its expression is short
+        DFA large = DivisibilityAutomata.divisibleBy(10, 1000);
+        for (int q = 0; q < 1000; q++) {
+            large.makeFinal(q);
+        }
+        ExpressionCache bounded = new ExpressionCache(30_000);
+        bounded.get(original, "0123456789", pipeline);
+        bounded.get(DivisibilityAutomata.divisibleBy(10, 3), "0123456789", pipeline);
+        Assertions.assertEquals(2, bounded.size());
+        Assertions.assertEquals("x", bounded.get(large, "0123456789", (dfa, alphabet) -> "x"));
+        Assertions.assertEquals(2, bounded.size());
+        Assertions.assertTrue(bounded.weight() > 20_000);
+        int before = computations[0];
+        bounded.get(original, "0123456789", pipeline);
+        Assertions.assertEquals(before + 1, computations[0]);
+    }
+
+    @Test
+    public void testExpressionStore(@TempDir Path directory) throws IOException {
+        DFA div7 = DivisibilityAutomata.divisibleBy(10, 7);
+        String expression = new EquationSystem(div7, "0123456789").solve();
+        try (ExpressionStore store = new ExpressionStore(directory)) {
+            Assertions.assertNull(store.get(div7, "0123456789"));
+            store.put(div7, "0123456789", expression);
+            Assertions.assertEquals(expression, store.get(div7, "0123456789"));
+            Assertions.assertNull(store.get(div7, "abcdefghij"));
+            Assertions.assertThrows(IOException.class, () -> new ExpressionStore(directory));
+
+            // Enough entries to grow the index
+            for (int div = 1; div <= 1000; div++) {
+                store.put(DivisibilityAutomata.divisibleBy(2, div), "01", "e" + div);
+            }
+            store.put(DivisibilityAutomata.divisibleBy(2, 3), "01", "replaced");
+            Assertions.assertEquals(1001, store.size());
+        }
+
+        try (ExpressionStore store = new ExpressionStore(directory)) {
+            Assertions.assertEquals(1001, store.size());
+            Assertions.assertEquals(expression, store.get(div7, "0123456789"));
+            Assertions.assertEquals("e999", store.get(DivisibilityAutomata.divisibleBy(2, 999), "01"));
+            Assertions.assertEquals("replaced", store.get(DivisibilityAutomata.divisibleBy(2, 3), "01"));
+        }
+
+        // A torn record at the end of the data file is discarded
+        Path dataFile = directory.resolve("expressions.dat");
+        long length = Files.size(dataFile);
+        Files.write(dataFile, new byte[50], StandardOpenOption.APPEND);
+        try (ExpressionStore store = new ExpressionStore(directory)) {
+            Assertions.assertEquals(length, Files.size(dataFile));
+            Assertions.assertEquals("e1000", store.get(DivisibilityAutomata.divisibleBy(2, 1000), "01"));
+        }
+
+        // A lost index is rebuilt
+        Files.delete(directory.resolve("expressions.idx"));
+        try (ExpressionStore store = new ExpressionStore(directory)) {
+            Assertions.assertEquals(1001, store.size());
+            Assertions.assertEquals(expression, store.get(div7, "0123456789"));
+            Assertions.assertEquals("replaced", store.get(DivisibilityAutomata.divisibleBy(2, 3), "01"));
+        }
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        DFA dfa = DivisibilityAutomata.divisibleBy(10, 7);
+        StringBuilder solved = new StringBuilder();
+        new EquationSystem(dfa, "0123456789").solve(solved);
+        Assertions.assertEquals(new EquationSystem(dfa, "0123456789").solve(), solved.toString());
+
+        // The optimizer works on the tree of the equation system, which renders the same language
+        String expected = new ExpressionTreeOptimizer(new EquationSystem(dfa, "0123456789").solve()).optimize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer out = Channels.newWriter(Channels.newChannel(bytes), "UTF-8")) {
+            new ExpressionTreeOptimizer(new EquationSystem(dfa, "0123456789"), new SolveOptions()).optimize(out);
+        }
+        String streamed = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected.length(), streamed.length());
+        Pattern pattern = Pattern.compile(streamed);
+        for (int i = 0; i < 2000; i++) {
+            Assertions.assertEquals(i % 7 == 0, pattern.matcher(String.valueOf(i)).matches());
+        }
+
+        // Limits still apply
+        SolveOptions options = new SolveOptions();
+        options.setMaxExpressionLength(100);
+        Assertions.assertThrows(SolveLimitExceededException.class, () -> new EquationSystem(dfa, "0123456789").solve(options, new StringBuilder()));
+    }
+
+    @Test
+    public void testSerialization(@TempDir Path directory) throws IOException {
+        Random random = new Random(20);
+        for (int i = 0; i < 50; i++) {
+            int n = random.nextInt(300);
+            int k = 1 + random.nextInt(20);
+            DFA dfa = new DFA(n, k);
+            for (int q = 0; q < n; q++) {
+                if (random.nextBoolean()) {
+                    dfa.makeFinal(q);
+                }
+                for (int e = 0; e < k; e++) {
+                    if (random.nextInt(4) != 0) {
+                        dfa.createTransition(q, e, random.nextInt(n));
+                    }
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DFAWriter.write(dfa, Channels.newChannel(bytes));
+            assertSameAutomaton(dfa, DFAReader.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))));
+            Path file = directory.resolve("dfa" + i);
+            DFAWriter.write(dfa, file);
+            assertSameAutomaton(dfa, DFAReader.read(file));
+            Assertions.assertArrayEquals(bytes.toByteArray(), Files.readAllBytes(file));
+        }
+
+        // Bit-packed: 7 states need 3 bits per transition
+        DFA dfa = DivisibilityAutomata.divisibleBy(10, 7);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DFAWriter.write(dfa, Channels.newChannel(bytes));
+        Assertions.assertEquals(17 + 27 + 1 + 4, bytes.size());
+
+        byte[] corrupted = bytes.toByteArray();
+        corrupted[20] ^= 1;
+        Assertions.assertThrows(IOException.class, () -> DFAReader.read(Channels.newChannel(new ByteArrayInputStream(corrupted))));
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+        Assertions.assertThrows(IOException.class, () -> DFAReader.read(Channels.newChannel(new ByteArrayInputStream(truncated))));
+
+        // Automata larger than the initial read buffer
+        DFA large = DivisibilityAutomata.divisibleBy(36, 5000);
+        ByteArrayOutputStream largeBytes = new ByteArrayOutputStream();
+        DFAWriter.write(large, Channels.newChannel(largeBytes));
+        assertSameAutomaton(large, DFAReader.read(Channels.newChannel(new ByteArrayInputStream(largeBytes.toByteArray()))));
+
+        // A header announcing a huge automaton without the data fails without allocating its size
+        byte[] huge = ByteBuffer.allocate(17).putInt(0x44324541).putInt(1).putInt(1 << 26).putInt(8).put((byte) 27).array();
+        Assertions.assertThrows(IOException.class, () -> DFAReader.read(Channels.newChannel(new ByteArrayInputStream(huge))));
+    }
+
+    private static void assertSameAutomaton(DFA expected, DFA actual) {
+        Assertions.assertEquals(expected.stateCount(), actual.stateCount());
+        Assertions.assertEquals(expected.symbolCount(), actual.symbolCount());
+        for (int q = 0; q < expected.stateCount(); q++) {
+            Assertions.assertEquals(expected.isFinal(q), actual.isFinal(q));
+            for (int e = 0; e < expected.symbolCount(); e++) {
+                Assertions.assertEquals(expected.getTransition(q, e), actual.getTransition(q, e));
+            }
+        }
+    }
+
+    @Test
+    public void testTextFormats() throws IOException {
+        // A sorted alphabet with characters which need escaping keeps the symbol indices of the readers
+        String alphabet = " \"&,<\\ab";
+        Random random = new Random(21);
+        for (int i = 0; i < 20; i++) {
+            int n = 1 + random.nextInt(30);
+            DFA dfa = new DFA(n, alphabet.length());
+            for (int q = 0; q < n; q++) {
+                if (random.nextBoolean()) {
+                    dfa.makeFinal(q);
+                }
+                for (int e = 0; e < alphabet.length(); e++) {
+                    // The initial state uses every symbol
+                    if (q == 0 || random.nextInt(3) != 0) {
+                        dfa.createTransition(q, e, random.nextInt(n));
+                    }
+                }
+            }
+
+            StringBuilder json = new StringBuilder();
+            JsonFormat.write(dfa, alphabet, json);
+            LabeledDFA fromJson = JsonFormat.read(new StringReader(json.toString()));
+            Assertions.assertEquals(alphabet, fromJson.getAlphabet());
+            assertSameAutomaton(dfa, fromJson.getDFA());
+
+            // The text readers only know the symbols which are used, so compare the reachable parts
+            StringBuilder dot = new StringBuilder();
+            DotFormat.write(dfa, alphabet, dot);
+            LabeledDFA fromDot = DotFormat.read(new StringReader(dot.toString()));
+            StringBuilder jflap = new StringBuilder();
+            JflapFormat.write(dfa, alphabet, jflap);
+            LabeledDFA fromJflap = JflapFormat.read(new StringReader(jflap.toString()));
+            for (LabeledDFA read : Arrays.asList(fromDot, fromJflap)) {
+                Assertions.assertEquals(alphabet, read.getAlphabet());
+                Assertions.assertEquals(DFAFingerprint.of(dfa), DFAFingerprint.of(read.getDFA()));
+            }
+        }
+
+        String dot = "digraph finite_state_machine {\n"
+                + "  rankdir=LR; size=\"8,5\"\n"
+                + "  /* Final states */\n"
+                + "  node [shape = doublecircle]; S0;\n"
+                + "  node [shape = point]; start;\n"
+                + "  node [shape = circle];\n"
+                + "  start -> S0;\n"
+                + "  S0 -> S1 -> S2 [label = \"a, b\"]; // a chain\n"
+                + "  S2 -> S0 [label=\",\"];\n"
+                + "}\n";
+        LabeledDFA fromDot = DotFormat.read(new StringReader(dot));
+        Assertions.assertEquals(",ab", fromDot.getAlphabet());
+        Assertions.assertEquals("S0", fromDot.getStateName(0));
+        Pattern pattern = Pattern.compile(new EquationSystem(fromDot.getDFA(), fromDot.getAlphabet()).solve());
+        Assertions.assertTrue(pattern.matcher("ab,ba,").matches());
+        Assertions.assertFalse(pattern.matcher("ab").matches());
+
+        String jflap = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><!--Created with JFLAP 7.1.-->\n"
+                + "<structure>&#13;\n<type>fa</type>\n<automaton>\n"
+                + "<!--The list of states.-->\n"
+                + "<state id=\"3\" name=\"q3\"><x>1.0</x><y>2.0</y><final/></state>\n"
+                + "<state id=\"7\" name=\"q7\"><x>1.0</x><y>2.0</y><initial/></state>\n"
+                + "<transition><from>7</from><to>3</to><read>x</read></transition>\n"
+                + "<transition><from>3</from><to>3</to><read>y</read></transition>\n"
+                + "</automaton>\n</structure>";
+        LabeledDFA fromJflap = JflapFormat.read(new StringReader(jflap));
+        Assertions.assertEquals("7", fromJflap.getStateName(0));
+        Assertions.assertEquals("xy*", new EquationSystem(fromJflap.getDFA(), fromJflap.getAlphabet()).solve());
+
+        String json = "{ \"comment\": {\"nested\": [1, \"]\", true]},\n"
+                + "  \"transitions\": [[1, null], [null, 0]], \"initial\": 1, \"final\": [1], \"alphabet\": \"\\u0061b\" }";
+        LabeledDFA fromJson = JsonFormat.read(new StringReader(json));
+        Assertions.assertEquals("ab", fromJson.getAlphabet());
+        Assertions.assertEquals("1", fromJson.getStateName(0));
+        Assertions.assertEquals("(ba)*", new EquationSystem(fromJson.getDFA(), fromJson.getAlphabet()).solve());
+
+        // Malformed input
+        Assertions.assertThrows(IOException.class, () -> DotFormat.read(new StringReader("digraph { a -> b [label=\"x\"]; }")));
+        Assertions.assertThrows(IOException.class, () -> DotFormat.read(new StringReader("graph { a -- b }")));
+        Assertions.assertThrows(IOException.class, () -> DotFormat.read(new StringReader(
+                "digraph { s [shape=point]; s -> a; a -> b [label=x]; a -> c [label=x]; }")));
+        Assertions.assertThrows(IOException.class, () -> JflapFormat.read(new StringReader(
+                "<structure><type>pda</type></structure>")));
+        Assertions.assertThrows(IOException.class, () -> JflapFormat.read(new StringReader("<structure><type>fa")));
+        Assertions.assertThrows(IOException.class, () -> JsonFormat.read(new StringReader(
+                "{\"alphabet\": \"ab\", \"final\": [], \"transitions\": [[0]]}")));
+        Assertions.assertThrows(IOException.class, () -> JsonFormat.read(new StringReader(
+                "{\"alphabet\": \"a\", \"final\": [], \"transitions\": [[1]]}")));
+        Assertions.assertThrows(IOException.class, () -> JsonFormat.read(new StringReader(
+                "{\"alphabet\": \"aa\", \"final\": [1], \"transitions\": [[1, 0], [null, null]]}")));
+    }
+
+    @Test
+    public void testBatchGenerator() throws IOException {
+        String input = "base=2..4 div=1..6\n\n# comment\n10 7\ndiv=3 base=16\n1 2\n2 x\n";
+        StringWriter sequential = new StringWriter();
+        StringWriter errors = new StringWriter();
+        new BatchGenerator(1, null).run(new StringReader(input), sequential, new PrintWriter(errors));
+        String[] lines = sequential.toString().split(System.lineSeparator());
+        Assertions.assertEquals(3 * 6 + 2, lines.length);
+        Assertions.assertTrue(lines[0].startsWith("2 1 "));
+        Assertions.assertTrue(lines[18].startsWith("10 7 "));
+        Assertions.assertTrue(lines[19].startsWith("16 3 "));
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            int base = Integer.parseInt(parts[0]);
+            int div = Integer.parseInt(parts[1]);
+            Pattern pattern = Pattern.compile(parts[2]);
+            for (int i = 0; i < 200; i++) {
+                Assertions.assertEquals(i % div == 0, pattern.matcher(Integer.toString(i, base).toUpperCase()).matches());
+            }
+        }
+        Assertions.assertEquals(2, errors.toString().split(System.lineSeparator()).length);
+        Assertions.assertTrue(errors.toString().contains("Line 6"));
+        Assertions.assertTrue(errors.toString().contains("Line 7"));
+
+        // Parallel generation keeps the order of the input
+        StringWriter parallel = new StringWriter();
+        new BatchGenerator(4, null).run(new StringReader(input), parallel, new PrintWriter(new StringWriter()));
+        Assertions.assertEquals(sequential.toString(), parallel.toString());
+    }
+
+    @Test
+    public void testServer() throws IOException {
+        try (ExpressionServer server = new ExpressionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                2, new ExpressionCache(1 << 20), new SolveOptions());
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            // All requests are sent before any response is read
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            for (int div = 1; div <= 12; div++) {
+                out.write("DIV 10 " + div + "\n");
+            }
+            out.write("JSON {\"alphabet\": \"ab\", \"final\": [1], \"transitions\": [[1, null], [null, 0]]}\r\n");
+            out.write("PING\nDIV 99 3\nJSON {\nNOPE\nDIV 10 3\n");
+            out.flush();
+            socket.shutdownOutput();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int div = 1; div <= 12; div++) {
+                String response = in.readLine();
+                Assertions.assertTrue(response.startsWith("OK "), response);
+                Pattern pattern = Pattern.compile(response.substring(3));
+                for (int i = 0; i < 200; i++) {
+                    Assertions.assertEquals(i % div == 0, pattern.matcher(Integer.toString(i)).matches());
+                }
+            }
+            Pattern pattern = Pattern.compile(in.readLine().substring(3));
+            Assertions.assertTrue(pattern.matcher("aba").matches());
+            Assertions.assertFalse(pattern.matcher("ab").matches());
+            Assertions.assertEquals("OK", in.readLine());
+            Assertions.assertTrue(in.readLine().startsWith("ERROR "));
+            Assertions.assertTrue(in.readLine().startsWith("ERROR "));
+            Assertions.assertTrue(in.readLine().startsWith("ERROR "));
+            Assertions.assertTrue(in.readLine().startsWith("OK "));
+            Assertions.assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void testServerLimits() throws IOException {
+        SolveOptions options = new SolveOptions();
+        options.setMaxExpressionLength(100);
+        try (ExpressionServer server = new ExpressionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                1, new ExpressionCache(1 << 20), options);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            // A request which exceeds the limits does not stop the following ones
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write("DIV 10 97\nPING\nDIV 10 97\nDIV 10 2\n");
+            out.flush();
+            socket.shutdownOutput();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Assertions.assertTrue(in.readLine().startsWith("ERROR "));
+            Assertions.assertEquals("OK", in.readLine());
+            Assertions.assertTrue(in.readLine().startsWith("ERROR "));
+            Assertions.assertTrue(in.readLine().startsWith("OK "));
+            Assertions.assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void testIncrementalSolver() {
+        Random random = new Random(25);
+        int n = 16;
+        DFA dfa = new DFA(n, 2);
+        for (int q = 0; q < n; q++) {
+            for (int e = 0; e < 2; e++) {
+                dfa.createTransition(q, e, random.nextInt(n));
+            }
+            if (random.nextInt(4) == 0) {
+                dfa.makeFinal(q);
+            }
+        }
+
+        IncrementalSolver solver = new IncrementalSolver(dfa, "ab", EliminationOrder.minWeight());
+        Assertions.assertEquals(n - 1, solver.pendingRounds());
+        for (int edit = 0; edit < 25; edit++) {
+            int q = random.nextInt(n);
+            if (random.nextInt(3) == 0) {
+                solver.setFinal(q, !dfa.isFinal(q));
+            } else {
+                solver.setTransition(q, random.nextInt(2), random.nextInt(n + 1) - 1);
+            }
+            Pattern pattern = Pattern.compile(solver.solve());
+            Assertions.assertEquals(0, solver.pendingRounds());
+            for (int length = 0; length <= 7; length++) {
+                for (int bits = 0; bits < 1 << length; bits++) {
+                    StringBuilder word = new StringBuilder();
+                    int state = 0;
+                    for (int i = 0; i < length; i++) {
+                        int symbol = (bits >> i) & 1;
+                        word.append("ab".charAt(symbol));
+                        state = state == -1 ? -1 : dfa.getTransition(state, symbol);
+                    }
+                    Assertions.assertEquals(state != -1 && dfa.isFinal(state), pattern.matcher(word).matches(), word.toString());
+                }
+            }
+        }
+
+        // An edited state is eliminated last, so editing it again only repeats the last round
+        solver.setFinal(7, !dfa.isFinal(7));
+        solver.solve();
+        solver.setTransition(7, 0, dfa.getTransition(7, 0) == 3 ? 4 : 3);
+        Assertions.assertEquals(1, solver.pendingRounds());
+        solver.setFinal(0, !dfa.isFinal(0));
+        Assertions.assertEquals(1, solver.pendingRounds());
+        Assertions.assertEquals(dfa.isFinal(0), Pattern.compile(solver.solve()).matcher("").matches());
+
+        // Invalid edits are rejected before anything is invalidated
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> solver.setTransition(3, 0, n));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> solver.setTransition(3, 2, 0));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> solver.setFinal(n, true));
+        Assertions.assertEquals(0, solver.pendingRounds());
+    }
+
+    private static void assertAcceptsMultiples(String expr, int base, int div) {
+        Random r = new Random(base * 31L + div);
+        Matcher m = Pattern.compile(expr).matcher("");
+        for (int i = 0; i < 100; i++) {
+            int num = r.nextInt(10000);
+            m.reset(Integer.toString(num, base).toUpperCase());
+            Assertions.assertEquals(num % div == 0, m.matches(), String.format("(BASE, DIV) = (%d, %d): Expression does not return correct result for %d", base, div, num));
+        }
+    }
+
     private static int getHighBaseSymbolIndex(char c) {
         return c <= '9' ? c - '0' : c - 'A' + 10;
     }